@@ -1,10 +1,30 @@
-import java.security.SecureRandom;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 
 /**
  * Crypt class provides methods to handle cryptographic operations.
- * The class uses the KMACXOF256 cryptographic function.
+ * The class uses the KMACXOF256 cryptographic function, or KMACXOF128 under the {@link Profile#KMAC128} profile.
  *
  * @author Andy Comfort
  * @author Caroline El Jazmi
@@ -36,6 +56,116 @@ public class Crypt {
     /** Symbolic constant for symmetric key authentication. */
     private static final String SYMM_KEY_AUTH = "SKA";
 
+    /** Length of the longest profile header. */
+    private static final int MAX_HEADER_LENGTH = 4;
+
+    /** Number of bytes read, masked and written at a time by the streaming methods. */
+    private static final int STREAM_CHUNK = 64 * 1024;
+
+    /** Shortest data for which the mask and tag are computed on two threads. */
+    private static final int PIPELINE_THRESHOLD = 1024 * 1024;
+
+    /** Number of bytes processed by one thread before they are handed to the other. */
+    private static final int PIPELINE_CHUNK = 64 * 1024;
+
+    /** Number of chunks one thread may run ahead of the other before it waits. */
+    private static final int PIPELINE_DEPTH = 8;
+
+    /** How long the calling thread waits on a full pipeline queue before checking on the other thread. */
+    private static final long PIPELINE_WAIT_MILLIS = 10;
+
+    /** Size of each memory-mapped window when hashing a file. */
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    /** Lower-case hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Default domain separation byte of TurboSHAKE. */
+    private static final byte TURBO_SHAKE_DOMAIN = 0x1F;
+
+    /** System property naming the profile used by {@link #encrypt(byte[], byte[])}, e.g. {@code -Dcrypt.profile=kmac128}. */
+    public static final String PROFILE_PROPERTY = "crypt.profile";
+
+    /** An empty input. */
+    private static final byte[] EMPTY = new byte[0];
+
+    /** The profile used when none is given. */
+    private static final Profile DEFAULT_PROFILE = selectProfile();
+
+
+    /**
+     * Hash functions selectable for {@link #computeHash(byte[], HashMode)} and {@link #computeHash(Path, HashMode)}.
+     * Every mode produces a 512-bit digest.
+     */
+    public enum HashMode {
+        /** KMACXOF256 with an empty key and customization string "D"; the original hash. */
+        KMACXOF256,
+        /** TurboSHAKE256 with domain byte 0x1F; 12 rounds instead of 24. */
+        TURBOSHAKE256,
+        /** KangarooTwelve KT128; 12 rounds, and large inputs are hashed on all cores. */
+        KT128,
+        /** KangarooTwelve KT256; 12 rounds, and large inputs are hashed on all cores. */
+        KT256
+    }
+
+
+    /**
+     * KMAC variants used for the keys, mask and tag of a cryptogram.
+     * Every profile except {@link #KMACXOF256} writes a header naming it ahead of the cryptogram,
+     * so decryption picks the right variant on its own.
+     */
+    public enum Profile {
+        /** KMACXOF256 with a 136-byte rate; the original format, written without a header. */
+        KMACXOF256(0),
+        /** Standard KMACXOF128 with a 168-byte rate; 128-bit security and about 24% fewer permutations per byte. */
+        KMAC128(1);
+
+        /** Number identifying this profile in headers. */
+        private final byte id;
+
+        /** Header naming this profile, "KPF" followed by the profile id; empty for the original format. */
+        private final byte[] header;
+
+        Profile(int id) {
+            this.id = (byte) id;
+            header = id == 0 ? new byte[0] : new byte[] {'K', 'P', 'F', (byte) id};
+        }
+
+        /**
+         * Returns the number identifying this profile in headers.
+         *
+         * @return the profile id
+         */
+        byte id() {
+            return id;
+        }
+
+        /**
+         * Returns the profile with the given id.
+         *
+         * @param id profile id
+         * @return the profile
+         * @throws IllegalArgumentException if no profile has that id
+         */
+        static Profile ofId(int id) {
+            for (Profile profile : values()) {
+                if (profile.id == id) {
+                    return profile;
+                }
+            }
+            throw new IllegalArgumentException("Unknown profile " + id + ".");
+        }
+
+        /**
+         * Returns the header written ahead of cryptograms of this profile. The array must not be modified.
+         *
+         * @return the header, empty for {@link #KMACXOF256}
+         */
+        byte[] header() {
+            return header;
+        }
+    }
+
 
     /**
      * Constructs a Crypt object with the specified validity status and data.
@@ -58,53 +188,638 @@ public class Crypt {
 
 
     /**
-     * Encrypts the provided input using the specified password.
+     * Encrypts the provided input using the specified password under the default profile,
+     * which is {@link Profile#KMACXOF256} unless {@link #PROFILE_PROPERTY} names another.
      *
      * @param thePassword password for encryption
      * @param theInput    data to encrypt
      * @return encrypted data
      */
     public static byte[] encrypt(byte[] thePassword, byte[] theInput) {
-        SecureRandom gen = new SecureRandom();
+        return encrypt(thePassword, theInput, DEFAULT_PROFILE);
+    }
+
+
+    /**
+     * Encrypts the provided input using the specified password under the given profile.
+     *
+     * @param thePassword password for encryption
+     * @param theInput    data to encrypt
+     * @param profile     KMAC variant to use; any profile but {@link Profile#KMACXOF256} is named in a header
+     * @return encrypted data
+     */
+    public static byte[] encrypt(byte[] thePassword, byte[] theInput, Profile profile) {
+        byte[] out = new byte[overhead(profile) + theInput.length];
+        encrypt(thePassword, theInput, 0, theInput.length, out, 0, profile);
+        return out;
+    }
+
+
+    /**
+     * Encrypts a range of an array under the default profile into a caller-supplied buffer.
+     *
+     * @param thePassword password for encryption
+     * @param in          array holding the data
+     * @param inOff       offset of the data in in
+     * @param len         length of the data
+     * @param out         receives the cryptogram
+     * @param outOff      offset of the cryptogram in out
+     * @return the length of the cryptogram, {@code overhead(defaultProfile()) + len}
+     * @throws IndexOutOfBoundsException if either range is outside its array
+     * @throws IllegalArgumentException if the ranges overlap other than in place
+     * @see #encrypt(byte[], byte[], int, int, byte[], int, Profile)
+     */
+    public static int encrypt(byte[] thePassword, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        return encrypt(thePassword, in, inOff, len, out, outOff, DEFAULT_PROFILE);
+    }
+
+
+    /**
+     * Encrypts a range of an array under the given profile into a caller-supplied buffer, writing
+     * header || rnd || enc || tag at {@code outOff}. To encrypt in place, put the data in out at
+     * {@code outOff + overhead(profile) - 64}, just ahead of room for the 64-byte tag, and pass that range as the input.
+     *
+     * @param thePassword password for encryption
+     * @param in          array holding the data
+     * @param inOff       offset of the data in in
+     * @param len         length of the data
+     * @param out         receives the cryptogram
+     * @param outOff      offset of the cryptogram in out
+     * @param profile     KMAC variant to use
+     * @return the length of the cryptogram, {@code overhead(profile) + len}
+     * @throws IndexOutOfBoundsException if either range is outside its array
+     * @throws IllegalArgumentException if the ranges overlap other than in place
+     */
+    public static int encrypt(byte[] thePassword, byte[] in, int inOff, int len, byte[] out, int outOff, Profile profile) {
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        int size = overhead(profile) + len;
+        if (size < len) {
+            throw new IllegalArgumentException("Cryptogram is too large for one array.");
+        }
+        Objects.checkFromIndexSize(outOff, size, out.length);
+        byte[] header = profile.header();
+        int rndOff = outOff + header.length;
+        int encOff = rndOff + KEY_LENGTH;
+        if (in == out && inOff != encOff && inOff < outOff + size && outOff < inOff + len) {
+            throw new IllegalArgumentException("Input and output overlap other than in place.");
+        }
+
+        // header || rnd || enc || tag is written straight into the result
         byte[] rnd = new byte[KEY_LENGTH];
-        gen.nextBytes(rnd);
+        KMACDrbg.current().nextBytes(rnd);
+        System.arraycopy(header, 0, out, outOff, header.length);
+        System.arraycopy(rnd, 0, out, rndOff, KEY_LENGTH);
+
+        byte[] keys = deriveKeys(profile, KMACXOF256.concatByteArr(rnd, thePassword), header);
 
-        byte[] keys = KMACXOF256.getKMACXOF256(KMACXOF256.concatByteArr(rnd, thePassword), new byte[]{}, KEYSET_LENGTH, CUSTOM_STRING);
-        byte[] key1 = Arrays.copyOfRange(keys, 0, KEY_LENGTH);
-        byte[] key2 = Arrays.copyOfRange(keys, KEY_LENGTH, 128);
+        // Draw the mask incrementally instead of materializing it; in place it is drawn on another thread
+        KeccakSponge tag = newKMAC(profile, keys, KEY_LENGTH, KEY_LENGTH, SYMM_KEY_AUTH);
+        maskAndTag(newKMAC(profile, keys, 0, KEY_LENGTH, SYMM_KEY_ENC).xof(), tag, in, inOff, out, encOff, len, true);
+        tag.squeeze(out, encOff + len, TAG_LENGTH / 8);
+
+        return size;
+    }
 
-        byte[] mask = KMACXOF256.getKMACXOF256(key1, new byte[]{}, theInput.length * 8, SYMM_KEY_ENC);
-        byte[] enc = KMACXOF256.xorBytes(mask, theInput); // modified line
-        byte[] tag = KMACXOF256.getKMACXOF256(key2, theInput, TAG_LENGTH, "SKA");
 
-        return KMACXOF256.concatByteArr(KMACXOF256.concatByteArr(rnd, enc), tag);
+    /**
+     * Encrypts the remaining bytes of a buffer in place under the default profile.
+     *
+     * @param thePassword password for encryption
+     * @param data        data to encrypt in place
+     * @return header || rnd, enc and tag
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     * @see #encrypt(byte[], ByteBuffer, Profile)
+     */
+    public static ByteBuffer[] encrypt(byte[] thePassword, ByteBuffer data) {
+        return encrypt(thePassword, data, DEFAULT_PROFILE);
+    }
+
+
+    /**
+     * Encrypts the remaining bytes of a heap or direct buffer in place under the given profile and advances its
+     * position to its limit. The cryptogram is returned in three parts, header || rnd, enc (a slice of the data
+     * buffer itself) and tag, ready for {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}, so the
+     * data is never copied.
+     *
+     * @param thePassword password for encryption
+     * @param data        data to encrypt in place
+     * @param profile     KMAC variant to use
+     * @return header || rnd, enc and tag
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     */
+    public static ByteBuffer[] encrypt(byte[] thePassword, ByteBuffer data, Profile profile) {
+        if (data.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        byte[] header = profile.header();
+        byte[] prefix = new byte[header.length + KEY_LENGTH];
+        System.arraycopy(header, 0, prefix, 0, header.length);
+        KMACDrbg.current().nextBytes(prefix, header.length, KEY_LENGTH);
+
+        byte[] keys = deriveKeys(profile, KMACXOF256.concatByteArr(Arrays.copyOfRange(prefix, header.length, prefix.length),
+                thePassword), header);
+        KeccakSponge tag = newKMAC(profile, keys, KEY_LENGTH, KEY_LENGTH, SYMM_KEY_AUTH);
+        XofReader mask = newKMAC(profile, keys, 0, KEY_LENGTH, SYMM_KEY_ENC).xof();
+
+        ByteBuffer body = data.slice();
+        if (data.hasArray()) {
+            int off = data.arrayOffset() + data.position();
+            maskAndTag(mask, tag, data.array(), off, data.array(), off, data.remaining(), true);
+            data.position(data.limit());
+        } else {
+            // The tag covers the data, so it is absorbed before the data is masked
+            tag.update(data.duplicate());
+            mask.xorKeystream(data);
+        }
+        return new ByteBuffer[] {ByteBuffer.wrap(prefix), body, ByteBuffer.wrap(tag.doFinal(TAG_LENGTH))};
+    }
+
+
+    /**
+     * Returns the number of bytes a cryptogram adds to the data: the header, rnd and the tag.
+     *
+     * @param profile KMAC variant
+     * @return the overhead in bytes
+     */
+    public static int overhead(Profile profile) {
+        return profile.header().length + KEY_LENGTH + TAG_LENGTH / 8;
     }
 
 
     /**
      * Decrypts the encoded data using the specified password.
+     * The profile is taken from the cryptogram's header; data without one is read as {@link Profile#KMACXOF256}.
      *
      * @param thePassword password for decryption
      * @param theEncoded  encoded data to decrypt
      * @return a Crypt object containing the decryption validity and decrypted data
+     * @throws IllegalArgumentException if the encoded data is too short to hold the random prefix and tag
      */
     public static Crypt decrypt(byte[] thePassword, byte[] theEncoded) {
-        byte[] rnd = Arrays.copyOfRange(theEncoded, 0, KEY_LENGTH);
-        byte[] msg = Arrays.copyOfRange(theEncoded, KEY_LENGTH, theEncoded.length - KEY_LENGTH);
-        byte[] tag = Arrays.copyOfRange(theEncoded, theEncoded.length - KEY_LENGTH, theEncoded.length);
+        Profile profile = profileOf(theEncoded);
+        if (profile != Profile.KMACXOF256 && theEncoded.length >= profile.header().length + 2 * KEY_LENGTH) {
+            Crypt result = decrypt(thePassword, theEncoded, profile);
+            if (result.isValid()) {
+                return result;
+            }
+            // The random prefix of an original cryptogram can look like a header, so try that reading too
+        }
+        return decrypt(thePassword, theEncoded, Profile.KMACXOF256);
+    }
+
+
+    /**
+     * Decrypts the encoded data using the specified password under the given profile.
+     *
+     * @param thePassword password for decryption
+     * @param theEncoded  encoded data to decrypt, including the profile's header
+     * @param profile     KMAC variant the data was encrypted with
+     * @return a Crypt object containing the decryption validity and decrypted data
+     * @throws IllegalArgumentException if the encoded data is too short to hold the header, random prefix and tag
+     */
+    private static Crypt decrypt(byte[] thePassword, byte[] theEncoded, Profile profile) {
+        byte[] header = profile.header();
+        int rndOff = header.length;
+        int encOff = rndOff + KEY_LENGTH;
+        if (theEncoded.length < encOff + KEY_LENGTH) {
+            throw new IllegalArgumentException("Cryptogram is too short.");
+        }
+        int msgLength = theEncoded.length - encOff - KEY_LENGTH;
+
+        // rnd || pw, with rnd taken straight from the cryptogram
+        byte[] concatenatedBytes = new byte[KEY_LENGTH + thePassword.length];
+        System.arraycopy(theEncoded, rndOff, concatenatedBytes, 0, KEY_LENGTH);
+        System.arraycopy(thePassword, 0, concatenatedBytes, KEY_LENGTH, thePassword.length);
+
+        byte[] keys = deriveKeys(profile, concatenatedBytes, header);
+
+        byte[] dec = new byte[msgLength];
+        byte[] ctag = new byte[TAG_LENGTH / 8];
+        KeccakSponge tag = newKMAC(profile, keys, KEY_LENGTH, KEY_LENGTH, SYMM_KEY_AUTH);
+        maskAndTag(kmac(profile, keys, 0, KEY_LENGTH, EMPTY, 0, 0, SYMM_KEY_ENC), tag,
+                theEncoded, encOff, dec, 0, msgLength, false);
+        tag.squeeze(ctag, 0, ctag.length);
+
+        boolean valid = Arrays.equals(theEncoded, encOff + msgLength, theEncoded.length, ctag, 0, ctag.length);
+        return new Crypt(valid, dec);
+    }
+
+
+    /**
+     * Encrypts everything readable from a channel under the default profile and writes the cryptogram to another,
+     * in the format of {@link #encrypt(byte[], byte[])}. Only a small buffer is held, whatever the input size.
+     *
+     * @param thePassword password for encryption
+     * @param in          blocking channel to read the data from
+     * @param out         blocking channel to write the cryptogram to
+     * @throws IOException if reading or writing fails
+     */
+    public static void encrypt(byte[] thePassword, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        encrypt(thePassword, in, out, DEFAULT_PROFILE);
+    }
+
+
+    /**
+     * Encrypts everything readable from a channel under the given profile and writes the cryptogram to another,
+     * in the format of {@link #encrypt(byte[], byte[], Profile)}. The mask is drawn and the tag absorbed
+     * one chunk at a time, so only a small buffer is held, whatever the input size.
+     *
+     * @param thePassword password for encryption
+     * @param in          blocking channel to read the data from
+     * @param out         blocking channel to write the cryptogram to
+     * @param profile     KMAC variant to use
+     * @throws IOException if reading or writing fails
+     */
+    public static void encrypt(byte[] thePassword, ReadableByteChannel in, WritableByteChannel out, Profile profile)
+            throws IOException {
+        byte[] rnd = new byte[KEY_LENGTH];
+        KMACDrbg.current().nextBytes(rnd);
+        byte[] header = profile.header();
+        writeFully(out, ByteBuffer.wrap(header));
+        writeFully(out, ByteBuffer.wrap(rnd));
+
+        byte[] keys = deriveKeys(profile, KMACXOF256.concatByteArr(rnd, thePassword), header);
+        XofReader mask = newKMAC(profile, keys, 0, KEY_LENGTH, SYMM_KEY_ENC).xof();
+        KeccakSponge tag = newKMAC(profile, keys, KEY_LENGTH, KEY_LENGTH, SYMM_KEY_AUTH);
+
+        // Each chunk is absorbed into the tag, then masked in place and written
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_CHUNK);
+        byte[] chunk = buffer.array();
+        int n;
+        while ((n = in.read(buffer.clear())) >= 0) {
+            tag.update(chunk, 0, n);
+            mask.xorKeystream(chunk, 0, chunk, 0, n);
+            writeFully(out, buffer.flip());
+        }
+        writeFully(out, ByteBuffer.wrap(tag.doFinal(TAG_LENGTH)));
+    }
 
-        byte[] concatenatedBytes = KMACXOF256.concatByteArr(rnd, thePassword);
-        byte[] keys = KMACXOF256.getKMACXOF256(concatenatedBytes, new byte[]{}, KEYSET_LENGTH, CUSTOM_STRING);
 
-        byte[] key1 = Arrays.copyOfRange(keys, 0, KEY_LENGTH);
-        byte[] key2 = Arrays.copyOfRange(keys, KEY_LENGTH, 128);
+    /**
+     * Encrypts everything readable from a stream under the default profile and writes the cryptogram to another.
+     * Neither stream is closed.
+     *
+     * @param thePassword password for encryption
+     * @param in          stream to read the data from
+     * @param out         stream to write the cryptogram to
+     * @throws IOException if reading or writing fails
+     * @see #encrypt(byte[], ReadableByteChannel, WritableByteChannel)
+     */
+    public static void encrypt(byte[] thePassword, InputStream in, OutputStream out) throws IOException {
+        encrypt(thePassword, Channels.newChannel(in), Channels.newChannel(out), DEFAULT_PROFILE);
+    }
 
-        byte[] mask = KMACXOF256.getKMACXOF256(key1, new byte[]{}, msg.length * 8, SYMM_KEY_ENC);
 
-        byte[] dec = KMACXOF256.xorBytes(mask, msg);
-        byte[] ctag = KMACXOF256.getKMACXOF256(key2, dec, TAG_LENGTH, SYMM_KEY_AUTH);
+    /**
+     * Decrypts a cryptogram read from a channel and writes the data to another, holding only a small buffer.
+     * The profile is taken from the cryptogram's header, as in {@link #decrypt(byte[], byte[])}, but since a channel
+     * cannot be rewound, an original cryptogram whose random prefix happens to look like a header is reported as invalid.
+     * The data is written before the tag at the end of the cryptogram is reached, so the output must be discarded
+     * if this method returns false.
+     *
+     * @param thePassword password for decryption
+     * @param in          blocking channel to read the cryptogram from
+     * @param out         blocking channel to write the data to
+     * @return whether the tag matched
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if the cryptogram is too short to hold the random prefix and tag
+     */
+    public static boolean decrypt(byte[] thePassword, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        int tagLength = TAG_LENGTH / 8;
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_CHUNK + tagLength);
+        byte[] chunk = buffer.array();
+
+        // The header, if any, and rnd lead the cryptogram, which is never shorter than the longest header and rnd
+        if (!readFully(in, buffer.limit(MAX_HEADER_LENGTH + KEY_LENGTH))) {
+            throw new IllegalArgumentException("Cryptogram is too short.");
+        }
+        Profile profile = profileOf(chunk);
+        byte[] header = profile.header();
+        int encOff = header.length + KEY_LENGTH;
+
+        byte[] concatenatedBytes = new byte[KEY_LENGTH + thePassword.length];
+        System.arraycopy(chunk, header.length, concatenatedBytes, 0, KEY_LENGTH);
+        System.arraycopy(thePassword, 0, concatenatedBytes, KEY_LENGTH, thePassword.length);
+        byte[] keys = deriveKeys(profile, concatenatedBytes, header);
+        XofReader mask = newKMAC(profile, keys, 0, KEY_LENGTH, SYMM_KEY_ENC).xof();
+        KeccakSponge tag = newKMAC(profile, keys, KEY_LENGTH, KEY_LENGTH, SYMM_KEY_AUTH);
+
+        // Keep whatever was read past rnd, then decrypt all but the last tagLength bytes, which may be the tag
+        int filled = buffer.position() - encOff;
+        System.arraycopy(chunk, encOff, chunk, 0, filled);
+        buffer.clear().position(filled);
+        while (in.read(buffer) >= 0) {
+            int n = buffer.position() - tagLength;
+            if (n > 0) {
+                mask.xorKeystream(chunk, 0, chunk, 0, n);
+                tag.update(chunk, 0, n);
+                writeFully(out, ByteBuffer.wrap(chunk, 0, n));
+                System.arraycopy(chunk, n, chunk, 0, tagLength);
+                buffer.position(tagLength);
+            }
+        }
+        if (buffer.position() < tagLength) {
+            throw new IllegalArgumentException("Cryptogram is too short.");
+        }
 
-        return new Crypt(Arrays.equals(tag, ctag), dec);
+        byte[] ctag = tag.doFinal(TAG_LENGTH);
+        return Arrays.equals(chunk, 0, tagLength, ctag, 0, tagLength);
+    }
+
+
+    /**
+     * Decrypts a cryptogram read from a stream and writes the data to another. Neither stream is closed.
+     * The output must be discarded if this method returns false.
+     *
+     * @param thePassword password for decryption
+     * @param in          stream to read the cryptogram from
+     * @param out         stream to write the data to
+     * @return whether the tag matched
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if the cryptogram is too short to hold the random prefix and tag
+     * @see #decrypt(byte[], ReadableByteChannel, WritableByteChannel)
+     */
+    public static boolean decrypt(byte[] thePassword, InputStream in, OutputStream out) throws IOException {
+        return decrypt(thePassword, Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+
+    /**
+     * Derives the encryption and authentication keys: key1 || key2 &lt;- KMACXOF(rnd || pw, header, 1024, "S").
+     *
+     * @param profile KMAC variant to use
+     * @param seed    rnd || pw
+     * @param header  the profile's header
+     * @return key1 || key2
+     */
+    static byte[] deriveKeys(Profile profile, byte[] seed, byte[] header) {
+        byte[] keys = new byte[KEYSET_LENGTH / 8];
+        kmac(profile, seed, 0, seed.length, header, 0, header.length, CUSTOM_STRING).squeeze(keys, 0, keys.length);
+        return keys;
+    }
+
+
+    /**
+     * XORs data with a mask and absorbs the plaintext into a tag. From {@link #PIPELINE_THRESHOLD} bytes on, and when
+     * the common {@link ForkJoinPool} has a parallelism above one, the tag is absorbed on the pool while the calling
+     * thread masks. When decrypting, the plaintext only exists once unmasked, so the tag follows the mask chunk by
+     * chunk through {@link #pipeline}. When encrypting in place the order is reversed: the calling thread absorbs each
+     * chunk into the tag before the mask overwrites it on the pool. A caller that is itself a {@link ForkJoinPool}
+     * worker does all the work itself rather than wait on another worker.
+     *
+     * @param mask    keystream reader; when encrypting in place it is drawn on another thread, so it must come from
+     *                {@link #newKMAC} rather than the calling thread's context behind {@link #kmac}
+     * @param tag     tag sponge, not yet finalized; it must not share state with mask
+     * @param in      data when encrypting, ciphertext when decrypting
+     * @param inOff   offset of the first input byte
+     * @param out     receives the ciphertext or data; may be the same range as the input
+     * @param outOff  offset of the first output byte
+     * @param len     number of bytes
+     * @param encrypt whether the input is the plaintext rather than the output
+     */
+    static void maskAndTag(XofReader mask, KeccakSponge tag, byte[] in, int inOff, byte[] out, int outOff, int len,
+                           boolean encrypt) {
+        if (len < PIPELINE_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2 || ForkJoinTask.inForkJoinPool()) {
+            if (encrypt) {
+                tag.update(in, inOff, len);
+                mask.xorKeystream(in, inOff, out, outOff, len);
+            } else {
+                mask.xorKeystream(in, inOff, out, outOff, len);
+                tag.update(out, outOff, len);
+            }
+            return;
+        }
+
+        if (encrypt && in == out && inOff == outOff) {
+            pipeline(len, (off, n) -> tag.update(in, inOff + off, n),
+                    (off, n) -> mask.xorKeystream(in, inOff + off, out, outOff + off, n));
+            return;
+        }
+
+        if (encrypt) {
+            ForkJoinTask<?> tagger = ForkJoinPool.commonPool().submit(() -> tag.update(in, inOff, len));
+            mask.xorKeystream(in, inOff, out, outOff, len);
+            tagger.join();
+            return;
+        }
+
+        pipeline(len, (off, n) -> mask.xorKeystream(in, inOff + off, out, outOff + off, n),
+                (off, n) -> tag.update(out, outOff + off, n));
+    }
+
+
+    /**
+     * Runs two passes over the same range, the second on the common {@link ForkJoinPool} a few chunks behind the first.
+     * The calling thread runs the leading pass one {@link #PIPELINE_CHUNK} at a time and hands each chunk end to the
+     * following task through a queue of {@link #PIPELINE_DEPTH} chunks, waiting while it is full.
+     * <p>
+     * Whichever of the calling thread and the task claims the following pass first runs it. If the queue is full and
+     * the task has not started, as when the pool has no free worker, the calling thread claims the pass and runs it
+     * itself once the leading pass is done. If the leading pass throws, the task is woken with a negative chunk end
+     * and stops; if the following pass throws, the calling thread stops waiting and rethrows its exception.
+     * An interrupt while waiting is deferred until the range is done.
+     *
+     * @param len    number of bytes
+     * @param lead   pass run on the calling thread
+     * @param follow pass run on the pool over each chunk after lead
+     */
+    private static void pipeline(int len, ChunkStep lead, ChunkStep follow) {
+        BlockingQueue<Integer> ready = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        AtomicBoolean claimed = new AtomicBoolean();
+        ForkJoinTask<?> follower = ForkJoinPool.commonPool().submit(() -> {
+            if (claimed.compareAndSet(false, true)) {
+                for (int done = 0; done < len; ) {
+                    int end = ready.take();
+                    if (end < 0) {
+                        throw new CancellationException("The leading pass failed.");
+                    }
+                    follow.run(done, end - done);
+                    done = end;
+                }
+            }
+            return null;
+        });
+
+        boolean inline = false;
+        boolean interrupted = false;
+        try {
+            for (int done = 0; done < len; ) {
+                int n = Math.min(PIPELINE_CHUNK, len - done);
+                lead.run(done, n);
+                done += n;
+                while (!inline) {
+                    try {
+                        if (ready.offer(done, PIPELINE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                            break;
+                        }
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        continue;
+                    }
+                    if (claimed.compareAndSet(false, true)) {
+                        inline = true;
+                    } else if (follower.isDone()) {
+                        follower.join();
+                        throw new IllegalStateException("The following pass stopped early.");
+                    }
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            claimed.set(true);
+            ready.clear();
+            ready.offer(-1);
+            throw e;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (inline || claimed.compareAndSet(false, true)) {
+            follow.run(0, len);
+        } else {
+            follower.join();
+        }
+    }
+
+
+    /**
+     * One pass of {@link #pipeline} over a chunk.
+     */
+    @FunctionalInterface
+    private interface ChunkStep {
+
+        /**
+         * Processes a chunk.
+         *
+         * @param off offset of the chunk from the start of the range
+         * @param n   chunk length
+         */
+        void run(int off, int n);
+    }
+
+
+    /**
+     * Starts a profile's KMACXOF with a key range in a sponge of its own, for when two must run side by side.
+     *
+     * @param profile KMAC variant to use
+     * @param key     key array
+     * @param off     offset of the key in key
+     * @param len     key length
+     * @param S       customization string
+     * @return a sponge ready to absorb the input data
+     */
+    static KeccakSponge newKMAC(Profile profile, byte[] key, int off, int len, String S) {
+        return switch (profile) {
+            case KMACXOF256 -> {
+                KeccakSponge sponge = KMACXOF256.newKMACXOF256Sponge();
+                KMACXOF256.absorbKMACPrefix(sponge, key, off, len, S);
+                yield sponge;
+            }
+            case KMAC128 -> SHA3.newKMACXOF128(Arrays.copyOfRange(key, off, off + len), S);
+        };
+    }
+
+
+    /**
+     * Reads from a channel until the buffer is full or the channel is exhausted.
+     *
+     * @param in     channel to read
+     * @param buffer buffer to fill
+     * @return whether the buffer was filled
+     * @throws IOException if reading fails
+     */
+    private static boolean readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Writes the remaining bytes of a buffer to a channel.
+     *
+     * @param out    channel to write
+     * @param buffer bytes to write
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+
+    /**
+     * Starts a profile's KMACXOF with a key range, absorbs the input range and returns the output reader.
+     * Under {@link Profile#KMACXOF256} the reader is the calling thread's {@link KMACXOF256#context()},
+     * so it stays valid only until the next call on this thread.
+     *
+     * @param profile KMAC variant to use
+     * @param key     key array
+     * @param off     offset of the key in key
+     * @param len     key length
+     * @param x       input array
+     * @param xOff    offset of the input in x
+     * @param xLen    input length
+     * @param S       customization string
+     * @return the output reader
+     */
+    static XofReader kmac(Profile profile, byte[] key, int off, int len, byte[] x, int xOff, int xLen, String S) {
+        return switch (profile) {
+            case KMACXOF256 -> KMACXOF256.context().init(key, off, len, S).update(x, xOff, xLen).xof();
+            case KMAC128 -> SHA3.newKMACXOF128(Arrays.copyOfRange(key, off, off + len), S).update(x, xOff, xLen).xof();
+        };
+    }
+
+
+    /**
+     * Returns the profile named by the header of a cryptogram.
+     *
+     * @param theEncoded encoded data
+     * @return the profile in the header, or {@link Profile#KMACXOF256} if the data has no header
+     */
+    public static Profile profileOf(byte[] theEncoded) {
+        for (Profile profile : Profile.values()) {
+            byte[] header = profile.header();
+            if (header.length > 0 && theEncoded.length >= header.length
+                    && Arrays.equals(theEncoded, 0, header.length, header, 0, header.length)) {
+                return profile;
+            }
+        }
+        return Profile.KMACXOF256;
+    }
+
+
+    /**
+     * Returns the profile used when none is given.
+     *
+     * @return the profile named by {@link #PROFILE_PROPERTY}, or {@link Profile#KMACXOF256}
+     */
+    public static Profile defaultProfile() {
+        return DEFAULT_PROFILE;
+    }
+
+
+    /**
+     * Reads {@link #PROFILE_PROPERTY}, falling back to {@link Profile#KMACXOF256} when it is unset or unknown.
+     *
+     * @return the default profile
+     */
+    private static Profile selectProfile() {
+        String requested = System.getProperty(PROFILE_PROPERTY);
+        if (requested != null) {
+            for (Profile profile : Profile.values()) {
+                if (profile.name().equalsIgnoreCase(requested.trim())) {
+                    return profile;
+                }
+            }
+            System.err.println("Crypt profile \"" + requested + "\" is not known; using KMACXOF256 instead.");
+        }
+        return Profile.KMACXOF256;
     }
 
 
@@ -115,12 +830,57 @@ public class Crypt {
      * @return a string representation of the hash
      */
     public static String computeHash(byte[] data) {
-        byte[] hash = KMACXOF256.getKMACXOF256("".getBytes(), data, TAG_LENGTH, "D");
-        StringBuilder result = new StringBuilder();
-        for (byte b : hash) {
-            result.append(String.format("%02x", b));
-        }
-        return result.toString();
+        return computeHash(data, HashMode.KMACXOF256);
+    }
+
+
+    /**
+     * Computes a hash of the provided data with the given hash function.
+     *
+     * @param data data to hash
+     * @param mode hash function to use
+     * @return a string representation of the hash
+     */
+    public static String computeHash(byte[] data, HashMode mode) {
+        byte[] hash = switch (mode) {
+            case KMACXOF256 -> KMACXOF256.getKMACXOF256("".getBytes(), data, TAG_LENGTH, "D");
+            case TURBOSHAKE256 -> SHA3.newTurboSHAKE256(TURBO_SHAKE_DOMAIN).update(data).doFinal(TAG_LENGTH);
+            case KT128 -> KangarooTwelve.kt128(data, "", TAG_LENGTH);
+            case KT256 -> KangarooTwelve.kt256(data, "", TAG_LENGTH);
+        };
+        return toHex(hash);
+    }
+
+
+    /**
+     * Computes a hash of the file at the given path.
+     * The file is memory-mapped in windows and streamed through the sponge, so it may be larger than the heap.
+     *
+     * @param file file to hash
+     * @return the binary hash
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] computeHash(Path file) throws IOException {
+        return computeHash(file, HashMode.KMACXOF256);
+    }
+
+
+    /**
+     * Computes a hash of the file at the given path with the given hash function, e.g. to fingerprint it.
+     * The file is memory-mapped in windows, so it may be larger than the heap.
+     *
+     * @param file file to hash
+     * @param mode hash function to use
+     * @return the binary hash
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] computeHash(Path file, HashMode mode) throws IOException {
+        return switch (mode) {
+            case KMACXOF256 -> absorbFile(KMACXOF256.initKMACXOF256("".getBytes(), "D"), file).doFinal(TAG_LENGTH);
+            case TURBOSHAKE256 -> absorbFile(SHA3.newTurboSHAKE256(TURBO_SHAKE_DOMAIN), file).doFinal(TAG_LENGTH);
+            case KT128 -> KangarooTwelve.kt128(file, "", TAG_LENGTH);
+            case KT256 -> KangarooTwelve.kt256(file, "", TAG_LENGTH);
+        };
     }
 
 
@@ -133,11 +893,97 @@ public class Crypt {
      */
     public static String computeAuthTag(byte[] pw, byte[] data) {
         byte[] hash = KMACXOF256.getKMACXOF256(pw, data, TAG_LENGTH, "T");
-        StringBuilder result = new StringBuilder();
-        for (byte b : hash) {
-            result.append(String.format("%02x", b));
+        return toHex(hash);
+    }
+
+
+    /**
+     * Computes an authentication tag for the file at the given path using the provided password.
+     * The file is memory-mapped in windows and streamed through the sponge, so it may be larger than the heap.
+     *
+     * @param pw   password for authentication
+     * @param file file to authenticate
+     * @return the binary authentication tag
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] computeAuthTag(byte[] pw, Path file) throws IOException {
+        return absorbFile(KMACXOF256.initKMACXOF256(pw, "T"), file).doFinal(TAG_LENGTH);
+    }
+
+
+    /**
+     * Encodes bytes as a lower-case hexadecimal string.
+     *
+     * @param bytes bytes to encode
+     * @return the hexadecimal string
+     */
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = HEX_DIGITS[(bytes[i] >>> 4) & 0xf];
+            out[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+
+    /**
+     * Streams a file into a sponge from offset {@link KeccakSponge#absorbed()} to its end, handing a checkpoint
+     * of the sponge to {@code checkpoints} after every {@code interval} bytes and at the end of the file.
+     * A sponge fresh from {@link KMACXOF256#initKMACXOF256(byte[], String)} or {@link SHA3} starts at the
+     * beginning of the file, while a sponge rebuilt with {@link KeccakSponge#restore(byte[])} continues where its
+     * checkpoint was taken, so an interrupted hash or MAC of a large file need not start over.
+     *
+     * @param sponge      sponge to absorb into
+     * @param file        file to read
+     * @param interval    number of bytes between checkpoints
+     * @param checkpoints receives each checkpoint
+     * @return the same sponge, ready to be finalized
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if interval is not positive or the sponge has absorbed more bytes than the file holds
+     */
+    public static KeccakSponge absorbFile(KeccakSponge sponge, Path file, long interval, Consumer<byte[]> checkpoints)
+            throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive.");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long pos = sponge.absorbed();
+            if (pos > size) {
+                throw new IllegalArgumentException("Checkpoint lies beyond the end of the file.");
+            }
+            while (pos < size) {
+                long next = size - pos > interval ? pos + interval : size;
+                while (pos < next) {
+                    long len = Math.min(MAP_WINDOW, next - pos);
+                    sponge.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, len));
+                    pos += len;
+                }
+                checkpoints.accept(sponge.checkpoint());
+            }
+        }
+        return sponge;
+    }
+
+
+    /**
+     * Streams a file into a sponge one memory-mapped window at a time.
+     *
+     * @param sponge sponge to absorb into
+     * @param file   file to read
+     * @return the same sponge
+     * @throws IOException if the file cannot be read
+     */
+    private static KeccakSponge absorbFile(KeccakSponge sponge, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos));
+                sponge.update(window);
+            }
         }
-        return result.toString();
+        return sponge;
     }
 
 
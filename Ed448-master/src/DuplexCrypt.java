@@ -0,0 +1,237 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * Single-pass password-based authenticated encryption on the Keccak-f[1600] duplex, after SpongeWrap.
+ * Where {@link Crypt} runs the data through one sponge for the mask and another for the tag, here each block of
+ * rate - 1 bytes is masked with the current state, absorbed, and followed by a single permutation, so the data is
+ * processed by Keccak once.
+ * <p>
+ * Format: "KPD" || profile id || rnd || c || t, where rnd is 64 random bytes and t is a 64-byte tag. The rate is
+ * 136 bytes under {@link Crypt.Profile#KMACXOF256} and 168 bytes under {@link Crypt.Profile#KMAC128}.
+ * The header, rnd and pw are absorbed first as the key, cut into blocks framed with bit 0 except the last, framed with
+ * bit 1. Then each data block is XORed with the rate and absorbed, framed with bit 1 except the last, framed with bit 0,
+ * and the tag is read from the final state. Every block is followed by pad10*1 up to the rate.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class DuplexCrypt {
+
+    /** Reads little-endian 64-bit lanes directly out of a byte array. */
+    private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Length of the header. */
+    private static final int HEADER_LENGTH = 4;
+
+    /** Length of rnd. */
+    private static final int KEY_LENGTH = 64;
+
+    /** Length of the tag. */
+    private static final int TAG_LENGTH = 64;
+
+    /** Offset of the encrypted data. */
+    private static final int BODY_OFFSET = HEADER_LENGTH + KEY_LENGTH;
+
+    private DuplexCrypt() {
+    }
+
+    /**
+     * Encrypts data under the default profile.
+     *
+     * @param thePassword password for encryption
+     * @param theInput    data to encrypt
+     * @return header || rnd || c || t
+     */
+    public static byte[] encrypt(byte[] thePassword, byte[] theInput) {
+        return encrypt(thePassword, theInput, Crypt.defaultProfile());
+    }
+
+    /**
+     * Encrypts data under the given profile.
+     *
+     * @param thePassword password for encryption
+     * @param theInput    data to encrypt
+     * @param profile     selects the rate: 136 bytes for {@link Crypt.Profile#KMACXOF256}, 168 for {@link Crypt.Profile#KMAC128}
+     * @return header || rnd || c || t
+     */
+    public static byte[] encrypt(byte[] thePassword, byte[] theInput, Crypt.Profile profile) {
+        byte[] out = new byte[BODY_OFFSET + theInput.length + TAG_LENGTH];
+        out[0] = 'K';
+        out[1] = 'P';
+        out[2] = 'D';
+        out[3] = profile.id();
+        KMACDrbg.current().nextBytes(out, HEADER_LENGTH, KEY_LENGTH);
+
+        int rate = rateOf(profile);
+        long[] state = new long[25];
+        absorbKey(state, rate, out, thePassword);
+        wrap(state, rate, theInput, 0, out, BODY_OFFSET, theInput.length, true);
+        squeezeTag(state, out, BODY_OFFSET + theInput.length);
+        return out;
+    }
+
+    /**
+     * Decrypts data encrypted by {@link #encrypt(byte[], byte[], Crypt.Profile)}; the profile is read from the header.
+     *
+     * @param thePassword password for decryption
+     * @param theEncoded  header || rnd || c || t
+     * @return a Crypt object containing the decryption validity and decrypted data
+     * @throws IllegalArgumentException if the data is too short or lacks the header of this format
+     */
+    public static Crypt decrypt(byte[] thePassword, byte[] theEncoded) {
+        if (theEncoded.length < BODY_OFFSET + TAG_LENGTH) {
+            throw new IllegalArgumentException("Cryptogram is too short.");
+        }
+        if (theEncoded[0] != 'K' || theEncoded[1] != 'P' || theEncoded[2] != 'D') {
+            throw new IllegalArgumentException("Not a duplex cryptogram.");
+        }
+        Crypt.Profile profile = Crypt.Profile.ofId(theEncoded[3]);
+        int msgLength = theEncoded.length - BODY_OFFSET - TAG_LENGTH;
+
+        int rate = rateOf(profile);
+        long[] state = new long[25];
+        absorbKey(state, rate, theEncoded, thePassword);
+        byte[] dec = new byte[msgLength];
+        wrap(state, rate, theEncoded, BODY_OFFSET, dec, 0, msgLength, false);
+        byte[] ctag = new byte[TAG_LENGTH];
+        squeezeTag(state, ctag, 0);
+
+        boolean valid = Arrays.equals(theEncoded, BODY_OFFSET + msgLength, theEncoded.length, ctag, 0, TAG_LENGTH);
+        return new Crypt(valid, dec);
+    }
+
+    /**
+     * Returns the duplex rate of a profile.
+     *
+     * @param profile the profile
+     * @return the rate in bytes
+     */
+    private static int rateOf(Crypt.Profile profile) {
+        return profile == Crypt.Profile.KMAC128 ? SHA3.RATE_128 : SHA3.RATE_256;
+    }
+
+    /**
+     * Absorbs header || rnd || pw as the key, framing every block with bit 0 except the last.
+     *
+     * @param state  the empty state
+     * @param rate   rate in bytes
+     * @param prefix array starting with header || rnd
+     * @param pw     password
+     */
+    private static void absorbKey(long[] state, int rate, byte[] prefix, byte[] pw) {
+        byte[] key = new byte[BODY_OFFSET + pw.length];
+        System.arraycopy(prefix, 0, key, 0, BODY_OFFSET);
+        System.arraycopy(pw, 0, key, BODY_OFFSET, pw.length);
+
+        int block = rate - 1;
+        int off = 0;
+        while (key.length - off > block) {
+            xorBytes(state, key, off, block);
+            duplex(state, rate, block, 0);
+            off += block;
+        }
+        xorBytes(state, key, off, key.length - off);
+        duplex(state, rate, key.length - off, 1);
+    }
+
+    /**
+     * Encrypts or decrypts data one block of rate - 1 bytes at a time. Each block is XORed with the rate part of
+     * the state, the data block is absorbed, and the state is permuted, framing every block with bit 1 except the last.
+     * Since the state after absorbing a block is the ciphertext, in and out may be the same range.
+     *
+     * @param state   the keyed state
+     * @param rate    rate in bytes
+     * @param in      data when encrypting, ciphertext when decrypting
+     * @param inOff   offset of the first input byte
+     * @param out     receives the ciphertext or data
+     * @param outOff  offset of the first output byte
+     * @param len     number of bytes
+     * @param encrypt whether the input is data rather than ciphertext
+     */
+    private static void wrap(long[] state, int rate, byte[] in, int inOff, byte[] out, int outOff, int len,
+                             boolean encrypt) {
+        int block = rate - 1;
+        while (len > block) {
+            wrapBlock(state, in, inOff, out, outOff, block, encrypt);
+            duplex(state, rate, block, 1);
+            inOff += block;
+            outOff += block;
+            len -= block;
+        }
+        wrapBlock(state, in, inOff, out, outOff, len, encrypt);
+        duplex(state, rate, len, 0);
+    }
+
+    /**
+     * XORs one block with the rate part of the state and leaves the ciphertext block in the state.
+     *
+     * @param state   the state
+     * @param in      input block array
+     * @param inOff   offset of the input block
+     * @param out     output block array
+     * @param outOff  offset of the output block
+     * @param len     block length; below the rate
+     * @param encrypt whether the input is data rather than ciphertext
+     */
+    private static void wrapBlock(long[] state, byte[] in, int inOff, byte[] out, int outOff, int len, boolean encrypt) {
+        int lanes = len >>> 3;
+        for (int i = 0; i < lanes; i++) {
+            long x = (long) LANE.get(in, inOff + (i << 3));
+            LANE.set(out, outOff + (i << 3), x ^ state[i]);
+            state[i] = encrypt ? x ^ state[i] : x;
+        }
+        for (int p = lanes << 3; p < len; p++) {
+            int shift = (p & 7) << 3;
+            byte x = in[inOff + p];
+            out[outOff + p] = (byte) (x ^ (state[p >>> 3] >>> shift));
+            byte c = encrypt ? out[outOff + p] : x;
+            state[p >>> 3] = (state[p >>> 3] & ~(0xFFL << shift)) | ((c & 0xFFL) << shift);
+        }
+    }
+
+    /**
+     * XORs bytes into the start of the state.
+     *
+     * @param state the state
+     * @param in    bytes to absorb
+     * @param off   offset of the first byte
+     * @param len   number of bytes; below the rate
+     */
+    private static void xorBytes(long[] state, byte[] in, int off, int len) {
+        for (int p = 0; p < len; p++) {
+            state[p >>> 3] ^= (in[off + p] & 0xFFL) << ((p & 7) << 3);
+        }
+    }
+
+    /**
+     * Appends the frame bit and pad10*1 to a block of {@code len} bytes already in the state, then permutes.
+     *
+     * @param state the state
+     * @param rate  rate in bytes
+     * @param len   block length; below the rate
+     * @param frame frame bit
+     */
+    private static void duplex(long[] state, int rate, int len, int frame) {
+        state[len >>> 3] ^= (long) (frame | 0x02) << ((len & 7) << 3);
+        state[(rate - 1) >>> 3] ^= 0x80L << (((rate - 1) & 7) << 3);
+        KeccakCore.permute(state);
+    }
+
+    /**
+     * Copies the tag out of the start of the state.
+     *
+     * @param state the final state
+     * @param out   receives the tag
+     * @param off   offset of the tag in out
+     */
+    private static void squeezeTag(long[] state, byte[] out, int off) {
+        for (int i = 0; i < TAG_LENGTH / 8; i++) {
+            LANE.set(out, off + (i << 3), state[i]);
+        }
+    }
+}
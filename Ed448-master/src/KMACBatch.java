@@ -0,0 +1,199 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * Computes KMACXOF256 over many independent (key, message, length, customization) tuples at once.
+ * Tuples are grouped, each group's states are stored lane-major, and every permutation of the group runs
+ * through {@link KeccakCore#permuteInterleaved}, amortizing per-call setup and giving the JIT independent
+ * work to schedule. Each output is identical to {@link KMACXOF256#getKMACXOF256(byte[], byte[], long, String)}.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KMACBatch {
+
+    /** Rate of KMACXOF256 in bytes. */
+    private static final int RATE_BYTES = 136;
+
+    /** Number of states permuted together. */
+    private static final int GROUP_SIZE = 8;
+
+    /** right_encode(0) followed by the cSHAKE domain byte, appended to every message. */
+    private static final byte[] TAIL = {0x00, 0x01, 0x04};
+
+    private KMACBatch() {
+    }
+
+    /**
+     * Calculates KMACXOF256 for each tuple (K[i], X[i], L[i], S[i]).
+     *
+     * @param K The keys.
+     * @param X The input data.
+     * @param L The desired output lengths in bits.
+     * @param S The customization strings.
+     * @return The outputs, in the order of the inputs.
+     * @throws IllegalArgumentException if the arrays differ in length, or any element is null or L[i] is negative.
+     */
+    public static byte[][] getKMACXOF256(byte[][] K, byte[][] X, int[] L, String[] S) {
+        if (K == null || X == null || L == null || S == null) {
+            throw new IllegalArgumentException("Keys, inputs, lengths and customization strings must not be null.");
+        }
+        int count = K.length;
+        if (X.length != count || L.length != count || S.length != count) {
+            throw new IllegalArgumentException("All argument arrays must have the same length.");
+        }
+
+        Job[] jobs = new Job[count];
+        byte[][] outputs = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            if (K[i] == null || X[i] == null || S[i] == null) {
+                throw new IllegalArgumentException("Key, input, or customization string must not be null.");
+            }
+            if (L[i] < 0) {
+                throw new IllegalArgumentException("Output length must not be negative.");
+            }
+            outputs[i] = new byte[L[i] / 8];
+            jobs[i] = new Job(K[i], X[i], S[i], outputs[i]);
+        }
+
+        // Group jobs of similar cost so few permutations are wasted on finished slots.
+        Job[] sorted = jobs.clone();
+        Arrays.sort(sorted, Comparator.comparingLong((Job job) -> job.permutations).reversed());
+
+        long[] lanes = new long[25 * GROUP_SIZE];
+        long[] scratch = new long[30 * GROUP_SIZE];
+        byte[] block = new byte[RATE_BYTES];
+        for (int from = 0; from < count; from += GROUP_SIZE) {
+            runGroup(Arrays.copyOfRange(sorted, from, Math.min(count, from + GROUP_SIZE)), lanes, scratch, block);
+        }
+        return outputs;
+    }
+
+    /**
+     * Runs up to {@link #GROUP_SIZE} jobs in lockstep.
+     * In step t every job still absorbing XORs in its block t, the whole group is permuted, and every job
+     * that has moved on to squeezing reads its next output block. Extra permutations of finished slots are
+     * harmless because their output has already been read.
+     *
+     * @param group   The jobs of this group.
+     * @param lanes   Lane-major state of {@code 25 * GROUP_SIZE} longs.
+     * @param scratch Permutation working space.
+     * @param block   Buffer for one rate block.
+     */
+    private static void runGroup(Job[] group, long[] lanes, long[] scratch, byte[] block) {
+        Arrays.fill(lanes, 0L);
+        long steps = 0;
+        for (int slot = 0; slot < group.length; slot++) {
+            KMACXOF256.customizationState(group[slot].customization).copyLanesTo(lanes, slot, GROUP_SIZE);
+            steps = Math.max(steps, group[slot].permutations);
+        }
+
+        for (long t = 0; t < steps; t++) {
+            for (int slot = 0; slot < group.length; slot++) {
+                Job job = group[slot];
+                if (t < job.blocks) {
+                    job.fillBlock(t, block);
+                    for (int j = 0; j < RATE_BYTES / 8; j++) {
+                        lanes[j * GROUP_SIZE + slot] ^= KMACXOF256.convertByteToWord(j * 8, block);
+                    }
+                }
+            }
+
+            KeccakCore.permuteInterleaved(lanes, GROUP_SIZE, scratch, KeccakCore.ROUNDS);
+
+            for (int slot = 0; slot < group.length; slot++) {
+                Job job = group[slot];
+                long outBlock = t - job.blocks + 1;
+                if (outBlock >= 0 && outBlock * RATE_BYTES < job.out.length) {
+                    int off = (int) (outBlock * RATE_BYTES);
+                    int len = Math.min(RATE_BYTES, job.out.length - off);
+                    for (int b = 0; b < len; b++) {
+                        job.out[off + b] = (byte) (lanes[(b >>> 3) * GROUP_SIZE + slot] >>> ((b & 7) << 3));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * One KMACXOF256 computation. After the customization block, the sponge absorbs the virtual concatenation
+     * bytepad(encode_string(K), 136) || X || right_encode(0) || 0x04, padded as {@link KMACXOF256} pads it.
+     */
+    private static final class Job {
+
+        /** bytepad(encode_string(K), 136). */
+        private final byte[] keyBlock;
+
+        /** The message. */
+        private final byte[] message;
+
+        /** The customization string. */
+        private final String customization;
+
+        /** Receives the output. */
+        private final byte[] out;
+
+        /** Total length of the data to absorb after the customization block. */
+        private final long length;
+
+        /** Number of rate blocks absorbed after the customization block. */
+        private final long blocks;
+
+        /** Number of permutations needed to absorb the data and squeeze the whole output. */
+        private final long permutations;
+
+        Job(byte[] K, byte[] X, String S, byte[] out) {
+            this.keyBlock = KMACXOF256.bytepad(KMACXOF256.encode_string(new String(K, StandardCharsets.UTF_8)), RATE_BYTES);
+            this.message = X;
+            this.customization = S;
+            this.out = out;
+            this.length = (long) keyBlock.length + message.length + TAIL.length;
+            this.blocks = (length + RATE_BYTES - 1) / RATE_BYTES;
+            long outBlocks = (out.length + RATE_BYTES - 1) / RATE_BYTES;
+            this.permutations = blocks + Math.max(0, outBlocks - 1);
+        }
+
+        /**
+         * Writes block t of the padded data into {@code block}.
+         * Like the original sponge, only a partial final block receives the closing 0x80.
+         *
+         * @param t     The block index.
+         * @param block Receives the 136 bytes of the block.
+         */
+        void fillBlock(long t, byte[] block) {
+            long start = t * RATE_BYTES;
+            int len = (int) Math.min(RATE_BYTES, length - start);
+            int filled = copy(keyBlock, 0, start, block, 0, len);
+            filled += copy(message, keyBlock.length, start + filled, block, filled, len - filled);
+            filled += copy(TAIL, (long) keyBlock.length + message.length, start + filled, block, filled, len - filled);
+            Arrays.fill(block, filled, RATE_BYTES, (byte) 0);
+            if (filled < RATE_BYTES) {
+                block[RATE_BYTES - 1] |= (byte) 0x80;
+            }
+        }
+
+        /**
+         * Copies the part of one segment of the data that overlaps the requested range.
+         *
+         * @param segment      The segment bytes.
+         * @param segmentStart Position of the segment within the data.
+         * @param from         Position within the data of the next byte wanted.
+         * @param dst          The destination block.
+         * @param dstOff       Offset within the block.
+         * @param max          Maximum number of bytes wanted.
+         * @return The number of bytes copied.
+         */
+        private static int copy(byte[] segment, long segmentStart, long from, byte[] dst, int dstOff, int max) {
+            long skip = from - segmentStart;
+            if (max <= 0 || skip < 0 || skip >= segment.length) {
+                return 0;
+            }
+            int n = (int) Math.min(max, segment.length - skip);
+            System.arraycopy(segment, (int) skip, dst, dstOff, n);
+            return n;
+        }
+    }
+}
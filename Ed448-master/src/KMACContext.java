@@ -0,0 +1,182 @@
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+
+/**
+ * Reusable KMACXOF256 context.
+ * A context owns one sponge and can be re-initialized with {@link #init(byte[], String)} any number of times,
+ * so a worker thread can run many independent KMAC computations without allocating a sponge per call.
+ * Instances are not thread-safe; keep one per thread.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KMACContext {
+
+    /** The sponge reused by every computation. */
+    private final KeccakSponge sponge = KMACXOF256.newKMACXOF256Sponge();
+
+    /** Whether a key and customization string have been absorbed since the last reset. */
+    private boolean initialized;
+
+
+    /**
+     * Starts a new KMACXOF256 computation, discarding any previous one.
+     *
+     * @param K The key used in the calculation.
+     * @param S Customization string for the hash.
+     * @return This context.
+     * @throws IllegalArgumentException if the key or customization string is null.
+     */
+    public KMACContext init(byte[] K, String S) {
+        if (K == null || S == null) {
+            throw new IllegalArgumentException("Key or customization string must not be null.");
+        }
+        sponge.reset();
+        KMACXOF256.absorbKMACPrefix(sponge, K, S);
+        initialized = true;
+        return this;
+    }
+
+    /**
+     * Starts a new KMACXOF256 computation keyed with {@code len} bytes of {@code key} starting at {@code off},
+     * discarding any previous one. This lets several keys derived into one array be used without slicing it.
+     *
+     * @param key The array holding the key.
+     * @param off Offset of the first key byte.
+     * @param len Length of the key in bytes.
+     * @param S   Customization string for the hash.
+     * @return This context.
+     * @throws IllegalArgumentException if the key or customization string is null.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public KMACContext init(byte[] key, int off, int len, String S) {
+        if (key == null || S == null) {
+            throw new IllegalArgumentException("Key or customization string must not be null.");
+        }
+        Objects.checkFromIndexSize(off, len, key.length);
+        sponge.reset();
+        KMACXOF256.absorbKMACPrefix(sponge, key, off, len, S);
+        initialized = true;
+        return this;
+    }
+
+    /**
+     * Starts a new KMACXOF256 computation from a prepared key, discarding any previous one.
+     *
+     * @param key The prepared key and customization string.
+     * @return This context.
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public KMACContext init(KMACKey key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+        key.restoreInto(sponge);
+        initialized = true;
+        return this;
+    }
+
+    /**
+     * Absorbs the whole byte array.
+     *
+     * @param X The input bytes.
+     * @return This context.
+     * @throws IllegalStateException if the context has not been initialized or is already squeezing.
+     */
+    public KMACContext update(byte[] X) {
+        return update(X, 0, X.length);
+    }
+
+    /**
+     * Absorbs {@code len} bytes of {@code X} starting at {@code off}.
+     *
+     * @param X   The input bytes.
+     * @param off Offset of the first byte to absorb.
+     * @param len Number of bytes to absorb.
+     * @return This context.
+     * @throws IllegalStateException if the context has not been initialized or is already squeezing.
+     */
+    public KMACContext update(byte[] X, int off, int len) {
+        checkInitialized();
+        sponge.update(X, off, len);
+        return this;
+    }
+
+    /**
+     * Absorbs the remaining bytes of a heap or direct buffer and advances its position to its limit.
+     *
+     * @param X The input buffer.
+     * @return This context.
+     * @throws IllegalStateException if the context has not been initialized or is already squeezing.
+     */
+    public KMACContext update(ByteBuffer X) {
+        checkInitialized();
+        sponge.update(X);
+        return this;
+    }
+
+    /**
+     * Finalizes the input and returns a reader over the output.
+     * The reader stays valid until the context is initialized again.
+     *
+     * @return The output reader.
+     * @throws IllegalStateException if the context has not been initialized.
+     */
+    public XofReader xof() {
+        checkInitialized();
+        return sponge.xof();
+    }
+
+    /**
+     * Finalizes the input and returns the requested number of output bits.
+     *
+     * @param L The desired output length in bits.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if L is negative or too large for one array.
+     * @throws IllegalStateException if the context has not been initialized.
+     */
+    public byte[] doFinal(long L) {
+        checkInitialized();
+        return sponge.doFinal(L);
+    }
+
+    /**
+     * Finalizes the input and writes the first {@code len} output bytes into a caller-supplied buffer.
+     *
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalStateException if the context has not been initialized.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public void doFinal(byte[] out, int off, int len) {
+        checkInitialized();
+        sponge.xof().squeeze(out, off, len);
+    }
+
+    /**
+     * Finalizes the input and fills the remaining bytes of a heap or direct buffer with output,
+     * advancing its position to its limit.
+     *
+     * @param out Receives the output.
+     * @throws IllegalStateException if the context has not been initialized.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    public void doFinal(ByteBuffer out) {
+        checkInitialized();
+        sponge.xof().squeeze(out);
+    }
+
+    /**
+     * Ensures a key has been absorbed.
+     *
+     * @throws IllegalStateException if the context has not been initialized.
+     */
+    private void checkInitialized() {
+        if (!initialized) {
+            throw new IllegalStateException("Context must be initialized with a key first.");
+        }
+    }
+}
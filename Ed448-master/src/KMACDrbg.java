@@ -0,0 +1,99 @@
+import java.security.SecureRandom;
+import java.util.Objects;
+
+
+/**
+ * Deterministic random bit generator built on KMACXOF256.
+ * An instance is seeded once from {@link SecureRandom} and reseeds itself every {@link #RESEED_INTERVAL} requests,
+ * so drawing a nonce or an ephemeral scalar costs one KMAC evaluation instead of a provider lookup and seeding.
+ * After every request the key is replaced by fresh output, so a captured state does not reveal earlier output.
+ * Instances are not thread-safe; {@link #current()} returns one per thread.
+ * The standard KMAC key encoding of {@link SHA3} is used, which keeps the full entropy of the key bytes.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KMACDrbg {
+
+    /** Number of requests served between reseeds. */
+    public static final int RESEED_INTERVAL = 1 << 16;
+
+    /** Length of the key and of each seed drawn from the entropy source, in bytes. */
+    private static final int SEED_LENGTH = 64;
+
+    /** Customization string used to derive a key from a seed. */
+    private static final String SEED_CUSTOM = "DRBG Seed";
+
+    /** Customization string used to generate output. */
+    private static final String GENERATE_CUSTOM = "DRBG";
+
+    /** Entropy source shared by all instances; consulted only when seeding. */
+    private static final SecureRandom ENTROPY = new SecureRandom();
+
+    /** Per-thread generators used by {@link #current()}. */
+    private static final ThreadLocal<KMACDrbg> INSTANCES = ThreadLocal.withInitial(KMACDrbg::new);
+
+    /** Current key; replaced on every request and reseed. */
+    private final byte[] key = new byte[SEED_LENGTH];
+
+    /** Requests served since the last reseed. */
+    private int requests;
+
+
+    /**
+     * Constructs a generator seeded from the shared {@link SecureRandom}.
+     */
+    public KMACDrbg() {
+        reseed();
+    }
+
+    /**
+     * Returns the calling thread's generator.
+     *
+     * @return The generator.
+     */
+    public static KMACDrbg current() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * Mixes fresh entropy from the shared {@link SecureRandom} into the key:
+     * key &lt;- KMACXOF256(key, seed, 512, "DRBG Seed").
+     */
+    public void reseed() {
+        byte[] seed = new byte[SEED_LENGTH];
+        ENTROPY.nextBytes(seed);
+        SHA3.newKMACXOF256(key, SEED_CUSTOM).update(seed).xof().squeeze(key, 0, SEED_LENGTH);
+        requests = 0;
+    }
+
+    /**
+     * Fills an array with random bytes.
+     *
+     * @param out Receives the random bytes.
+     */
+    public void nextBytes(byte[] out) {
+        nextBytes(out, 0, out.length);
+    }
+
+    /**
+     * Fills part of an array with random bytes:
+     * key || out &lt;- KMACXOF256(key, "", 512 + 8 * len, "DRBG").
+     *
+     * @param out Receives the random bytes.
+     * @param off Offset of the first byte to write.
+     * @param len Number of bytes to write.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public void nextBytes(byte[] out, int off, int len) {
+        Objects.checkFromIndexSize(off, len, out.length);
+        if (requests == RESEED_INTERVAL) {
+            reseed();
+        }
+        requests++;
+        XofReader stream = SHA3.newKMACXOF256(key, GENERATE_CUSTOM).xof();
+        stream.squeeze(key, 0, SEED_LENGTH);
+        stream.squeeze(out, off, len);
+    }
+}
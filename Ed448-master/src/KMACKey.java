@@ -0,0 +1,46 @@
+/**
+ * A KMACXOF256 key and customization string whose prefix has been absorbed once.
+ * The sponge state after bytepad(encode_string("KMAC") || encode_string(S), 136) and
+ * bytepad(encode_string(K), 136) is kept as a snapshot; each MAC restores the snapshot and absorbs only
+ * the message, skipping the prefix permutations and encodings.
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KMACKey {
+
+    /** Snapshot of the sponge after the key prefix; never squeezed or updated. */
+    private final KeccakSponge prefix;
+
+
+    /**
+     * Prepares a key for repeated KMACXOF256 computations.
+     *
+     * @param K The key used in the calculation.
+     * @param S Customization string for the hash.
+     * @throws IllegalArgumentException if the key or customization string is null.
+     */
+    public KMACKey(byte[] K, String S) {
+        prefix = KMACXOF256.initKMACXOF256(K, S);
+    }
+
+    /**
+     * Creates a new sponge positioned after the key prefix, ready to absorb a message.
+     *
+     * @return The new sponge.
+     */
+    public KeccakSponge newSponge() {
+        return prefix.copy();
+    }
+
+    /**
+     * Restores the prefix snapshot into a sponge created with the KMACXOF256 parameters.
+     *
+     * @param sponge The sponge to overwrite.
+     */
+    void restoreInto(KeccakSponge sponge) {
+        sponge.copyFrom(prefix);
+    }
+}
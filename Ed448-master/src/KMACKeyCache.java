@@ -0,0 +1,84 @@
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Bounded least-recently-used cache of prepared {@link KMACKey} instances.
+ * Intended for servers that MAC many records under a changing but recurring set of keys.
+ * Note that the cache holds a copy of every cached key until it is evicted or cleared.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KMACKeyCache {
+
+    /** Cache entries in access order, eldest first. */
+    private final LinkedHashMap<CacheKey, KMACKey> entries;
+
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity The maximum number of prepared keys to keep.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public KMACKeyCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, KMACKey> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the prepared key for the given key and customization string, preparing it on a miss.
+     *
+     * @param K The key used in the calculation.
+     * @param S Customization string for the hash.
+     * @return The prepared key.
+     * @throws IllegalArgumentException if the key or customization string is null.
+     */
+    public KMACKey get(byte[] K, String S) {
+        if (K == null || S == null) {
+            throw new IllegalArgumentException("Key or customization string must not be null.");
+        }
+        CacheKey cacheKey = new CacheKey(ByteBuffer.wrap(K.clone()), S);
+        synchronized (entries) {
+            KMACKey prepared = entries.get(cacheKey);
+            if (prepared != null) {
+                return prepared;
+            }
+        }
+
+        // Prepare outside the lock; a concurrent miss on the same key just prepares it twice.
+        KMACKey prepared = new KMACKey(K, S);
+        synchronized (entries) {
+            entries.put(cacheKey, prepared);
+        }
+        return prepared;
+    }
+
+    /**
+     * Removes every cached key.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Map key pairing the raw key bytes with the customization string.
+     *
+     * @param key           The key bytes.
+     * @param customization The customization string.
+     */
+    private record CacheKey(ByteBuffer key, String customization) {
+    }
+}
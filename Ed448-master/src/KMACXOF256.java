@@ -1,6 +1,8 @@
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 
@@ -14,235 +16,366 @@ import java.util.Objects;
  */
 public class KMACXOF256 {
 
-    /** Stores the result of computation. */
-    private static byte[] result;
+    /** Rate of the 256-bit cSHAKE and KMAC instances in bytes. */
+    private static final int RATE_BYTES = 136;
 
-    /** Constants used in Keccak round calculations. */
-    private static final long[] keccakf_rndc = {
-            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL,
-            0x8000000080008000L, 0x000000000000808BL, 0x0000000080000001L,
-            0x8000000080008081L, 0x8000000000008009L, 0x000000000000008aL,
-            0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
-            0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L,
-            0x8000000000008003L, 0x8000000000008002L, 0x8000000000000080L,
-            0x000000000000800aL, 0x800000008000000aL, 0x8000000080008081L,
-            0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
-    };
+    /** Domain separation byte that starts the cSHAKE padding. */
+    private static final byte CSHAKE_DOMAIN = 0x04;
 
-    /** Indices used for bit permutation in Keccak calculations. */
-    private static final int[] keccakf_piln = {
-            10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4,
-            15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
-    };
+    /** Customization strings this library uses with KMACXOF256. */
+    private static final String[] FIXED_CUSTOMIZATIONS = {"S", "SKE", "SKA", "D", "T", "SK", "N", "PK", "PKE", "PKA"};
 
-    /** Rotation offsets used in Keccak calculations. */
-    private static final int[] keccakf_rotc = {
-            1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14,
-            27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
-    };
+    /** KMACXOF256 sponges that have absorbed the customization block of each fixed label; never mutated. */
+    private static final Map<String, KeccakSponge> KMAC_CUSTOMIZATION_STATES = precomputeCustomizations();
 
+    /** Per-thread KMACXOF256 contexts reused by the one-shot functions. */
+    private static final ThreadLocal<KMACContext> KMAC_CONTEXTS = ThreadLocal.withInitial(KMACContext::new);
 
     /**
      * Calculates the KMACXOF256 hash of the input data using the specified key.
+     * Safe to call concurrently; each thread reuses its own context.
+     * Outputs too large for one array, such as a mask for a multi-gigabyte message, can be read in parts
+     * from {@link #initKMACXOF256(byte[], String)}.
      *
      * @param K The key used in the calculation.
      * @param X The input data to be hashed.
-     * @param L The desired length of the output hash.
+     * @param L The desired length of the output hash in bits.
      * @param S Customization string for the hash.
      * @return The computed KMACXOF256 hash.
-     * @throws IllegalArgumentException if any input is null.
+     * @throws IllegalArgumentException if any input is null, or L is negative or too large for one array.
      */
-    public static byte[] getKMACXOF256(byte[] K, byte[] X, int L, String S) {
+    public static byte[] getKMACXOF256(byte[] K, byte[] X, long L, String S) {
         // Validate conditions
         if (K == null || X == null || S == null) {
             throw new IllegalArgumentException("Key, input, or customization string must not be null.");
         }
 
-//        System.out.println("Checkpoint: KMACXOF256 - Start");
-//        System.out.println("Input K: " + Arrays.toString(K));
-//        System.out.println("Input X: " + Arrays.toString(X));
-//        System.out.println("Length L: " + L);
-//        System.out.println("Customization String S: " + S);
-
-        // Format the key by encoding it as a string.
-        String keyAsString = new String(K, StandardCharsets.UTF_8);
-        byte[] encodedKey = encode_string(keyAsString);
+        return KMAC_CONTEXTS.get().init(K, S).update(X, 0, X.length).doFinal(L);
+    }
 
-//        System.out.println("Encoded Key: " + Arrays.toString(encodedKey));
 
-        // Apply byte padding to the key to meet the block size requirements of cSHAKE256.
-        int blockSize = 136; // Block size for cSHAKE256 in bytes.
-        byte[] bytePaddedKey = bytepad(encodedKey, blockSize);
+    /**
+     * Calculates the KMACXOF256 hash of the input data into a caller-supplied buffer.
+     * The output is the first {@code len} bytes of {@link #getKMACXOF256(byte[], byte[], long, String)} with
+     * {@code L = 8 * len}, so consecutive ranges of one output, such as a pair of derived keys, can be written
+     * straight into preallocated arrays.
+     *
+     * @param K   The key used in the calculation.
+     * @param X   The input data to be hashed.
+     * @param S   Customization string for the hash.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if any input is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void getKMACXOF256(byte[] K, byte[] X, String S, byte[] out, int off, int len) {
+        if (K == null || X == null || S == null) {
+            throw new IllegalArgumentException("Key, input, or customization string must not be null.");
+        }
+        Objects.checkFromIndexSize(off, len, out.length);
 
-//        System.out.println("Byte Padded Key: " + Arrays.toString(bytePaddedKey));
+        KMAC_CONTEXTS.get().init(K, S).update(X, 0, X.length).doFinal(out, off, len);
+    }
 
 
-        // Prepare the initial input for cSHAKE256 by concatenating the byte-padded key and the original input.
-        byte[] initialInput = concatByteArr(bytePaddedKey, X);
+    /**
+     * Calculates the KMACXOF256 hash of the input data into the remaining bytes of a heap or direct buffer
+     * and advances its position to its limit.
+     *
+     * @param K   The key used in the calculation.
+     * @param X   The input data to be hashed.
+     * @param S   Customization string for the hash.
+     * @param out Receives the output.
+     * @throws IllegalArgumentException if any input is null.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    public static void getKMACXOF256(byte[] K, byte[] X, String S, ByteBuffer out) {
+        if (K == null || X == null || S == null) {
+            throw new IllegalArgumentException("Key, input, or customization string must not be null.");
+        }
 
-        // right-encoded value of zero must be appended to the input.
-        byte[] rightEncodedZero = right_encode(0); // This function should be defined as per your use case.
+        KMAC_CONTEXTS.get().init(K, S).update(X, 0, X.length).doFinal(out);
+    }
 
-        byte[] finalInput = concatByteArr(initialInput, rightEncodedZero);
 
-//        System.out.println("Final Input for cSHAKE256: " + Arrays.toString(finalInput));
+    /**
+     * Calculates the KMACXOF256 hash of the input data under a prepared key.
+     * Only the input is absorbed; the key prefix is restored from the prepared snapshot.
+     *
+     * @param key The prepared key and customization string.
+     * @param X   The input data to be hashed.
+     * @param L   The desired length of the output hash in bits.
+     * @return The computed KMACXOF256 hash.
+     * @throws IllegalArgumentException if any input is null, or L is negative or too large for one array.
+     */
+    public static byte[] getKMACXOF256(KMACKey key, byte[] X, long L) {
+        if (key == null || X == null) {
+            throw new IllegalArgumentException("Key or input must not be null.");
+        }
 
+        return KMAC_CONTEXTS.get().init(key).update(X, 0, X.length).doFinal(L);
+    }
 
-        // Compute the cSHAKE256 hash. This function must be defined to return the cSHAKE256 hash of the input.
-        result = cSHAKE256(finalInput, L, "KMAC", S);
 
-//        System.out.println("cSHAKE256 Result: " + Arrays.toString(result)); // Test
+    /**
+     * Calculates the KMACXOF256 hash of the input data under a prepared key into a caller-supplied buffer.
+     *
+     * @param key The prepared key and customization string.
+     * @param X   The input data to be hashed.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if any input is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void getKMACXOF256(KMACKey key, byte[] X, byte[] out, int off, int len) {
+        if (key == null || X == null) {
+            throw new IllegalArgumentException("Key or input must not be null.");
+        }
+        Objects.checkFromIndexSize(off, len, out.length);
 
-        return result;
+        KMAC_CONTEXTS.get().init(key).update(X, 0, X.length).doFinal(out, off, len);
     }
 
 
     /**
-     * Calculates the cSHAKE256 hash of the input data.
+     * Starts an incremental KMACXOF256 computation.
+     * The returned sponge has absorbed the customization and key prefix; feed the input through
+     * {@link KeccakSponge#update(byte[], int, int)} and read the output with {@link KeccakSponge#squeeze}
+     * or {@link KeccakSponge#doFinal(long)}.
      *
-     * @param X The input data to be hashed.
-     * @param L The desired length of the output hash.
-     * @param N The function name for the hash.
+     * @param K The key used in the calculation.
      * @param S Customization string for the hash.
-     * @return The computed cSHAKE256 hash.
+     * @return A sponge ready to absorb the input data.
+     * @throws IllegalArgumentException if the key or customization string is null.
      */
-    public static byte[] cSHAKE256(byte[] X, int L, String N, String S) {
-        // If both the function name and customization string are empty, revert to SHAKE256
-        if (N.isEmpty() && S.isEmpty()) {
-            return SHAKE256(X, L);
+    public static KeccakSponge initKMACXOF256(byte[] K, String S) {
+        if (K == null || S == null) {
+            throw new IllegalArgumentException("Key or customization string must not be null.");
         }
 
-        // Encode the function name and the customization string
-        byte[] encodedFuncName = encode_string(new String(N.getBytes(StandardCharsets.UTF_8)));
-        byte[] encodedCustStr = encode_string(new String(S.getBytes(StandardCharsets.UTF_8)));
+        KeccakSponge sponge = newKMACXOF256Sponge();
+        absorbKMACPrefix(sponge, K, S);
+        return sponge;
+    }
 
-        // Merge the encoded strings
-        byte[] customization = concatByteArr(encodedFuncName, encodedCustStr);
 
-        // Pad the customization string and merge it with the input
-        byte[] paddedCustomization = bytepad(customization, 136);
-        byte[] combinedInput = concatByteArr(paddedCustomization, X);
+    /**
+     * Returns the calling thread's reusable context, the one behind the one-shot functions.
+     * A computation on it must be finished before the next one-shot call on the same thread, which
+     * re-initializes it.
+     *
+     * @return The calling thread's context.
+     */
+    static KMACContext context() {
+        return KMAC_CONTEXTS.get();
+    }
 
-        // Big-end interp
-        combinedInput = concatByteArr(combinedInput, new byte[]{0x04});
 
-        // Apply the sponge construction to get the final hash w/ keccak variant function
-        return sponge(combinedInput, L, 512);
+    /**
+     * Creates an empty sponge with the KMACXOF256 parameters.
+     * right_encode(0) is appended to the input when the sponge is finalized.
+     *
+     * @return The empty sponge.
+     */
+    static KeccakSponge newKMACXOF256Sponge() {
+        return new KeccakSponge(RATE_BYTES, right_encode(0), CSHAKE_DOMAIN, true);
     }
 
 
     /**
-     * Calculates the SHAKE256 hash of the input data.
+     * Absorbs the KMAC customization block followed by bytepad(encode_string(K), 136) into an empty sponge.
+     *
+     * @param sponge The empty sponge.
+     * @param K      The key.
+     * @param S      The customization string.
+     */
+    static void absorbKMACPrefix(KeccakSponge sponge, byte[] K, String S) {
+        absorbKMACPrefix(sponge, K, 0, K.length, S);
+    }
+
+
+    /**
+     * Absorbs the KMAC customization block followed by bytepad(encode_string(K), 136) into an empty sponge,
+     * where K is the range of {@code len} bytes of {@code key} starting at {@code off}.
+     *
+     * @param sponge The empty sponge.
+     * @param key    The array holding the key.
+     * @param off    Offset of the first key byte.
+     * @param len    Length of the key in bytes.
+     * @param S      The customization string.
+     */
+    static void absorbKMACPrefix(KeccakSponge sponge, byte[] key, int off, int len, String S) {
+        // Fixed labels start from a precomputed state instead of absorbing and permuting the block again.
+        KeccakSponge customized = KMAC_CUSTOMIZATION_STATES.get(S);
+        if (customized != null) {
+            sponge.copyFrom(customized);
+        } else {
+            absorbCustomization(sponge, "KMAC", S);
+        }
+
+        // Format the key by encoding it as a string.
+        String keyAsString = new String(key, off, len, StandardCharsets.UTF_8);
+        sponge.update(left_encode(RATE_BYTES)).update(encode_string(keyAsString)).padToBlock();
+    }
+
+
+    /**
+     * Returns a KMACXOF256 sponge that has absorbed the customization block for S.
+     * Fixed labels return the shared precomputed sponge, which callers must not modify.
+     *
+     * @param S The customization string.
+     * @return The sponge after the customization block.
+     */
+    static KeccakSponge customizationState(String S) {
+        KeccakSponge customized = KMAC_CUSTOMIZATION_STATES.get(S);
+        if (customized == null) {
+            customized = newKMACXOF256Sponge();
+            absorbCustomization(customized, "KMAC", S);
+        }
+        return customized;
+    }
+
+
+    /**
+     * Absorbs the KMAC customization block for each fixed label.
+     *
+     * @return An immutable map from customization string to the sponge after its customization block.
+     */
+    private static Map<String, KeccakSponge> precomputeCustomizations() {
+        Map<String, KeccakSponge> states = new HashMap<>();
+        for (String S : FIXED_CUSTOMIZATIONS) {
+            KeccakSponge sponge = newKMACXOF256Sponge();
+            absorbCustomization(sponge, "KMAC", S);
+            states.put(S, sponge);
+        }
+        return Map.copyOf(states);
+    }
+
+
+    /**
+     * Calculates the cSHAKE256 hash of the input data.
+     * Uses the standard cSHAKE256 padding of {@link SHA3}; with an empty function name and customization
+     * string this is SHAKE256.
      *
      * @param X The input data to be hashed.
      * @param L The desired length of the output hash.
-     * @return The computed SHAKE256 hash.
+     * @param N The function name for the hash.
+     * @param S Customization string for the hash.
+     * @return The computed cSHAKE256 hash.
+     * @throws IllegalArgumentException if X, N or S is null, or L is negative.
      */
-    public static byte[] SHAKE256(byte[] X, int L) {
-        // The 'rate' of SHAKE256 is 136 bytes.
-        final int rateInBytes = 136;
+    public static byte[] cSHAKE256(byte[] X, long L, String N, String S) {
+        return SHA3.cSHAKE256(X, L, N, S);
+    }
 
-        // Calculate bytes needed to be added to the input to make its length a multiple of the rate.
-        int paddingLength = rateInBytes - (X.length % rateInBytes);
 
-        // Create a new array that has space for the original input plus the padding.
-        byte[] paddedInput = Arrays.copyOf(X, X.length + 1);
+    /**
+     * Calculates the cSHAKE256 hash of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data to be hashed.
+     * @param N   The function name for the hash.
+     * @param S   Customization string for the hash.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if X, N or S is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void cSHAKE256(byte[] X, String N, String S, byte[] out, int off, int len) {
+        SHA3.cSHAKE256(X, N, S, out, off, len);
+    }
 
-        // Single byte padding
-        byte paddingByte = (paddingLength == 1) ? (byte) 0x9F : 0x1F;
-        paddedInput[X.length] = paddingByte;
 
-        // Sponge function that produces the final hash.
-        return sponge(paddedInput, L, rateInBytes * 8); // rateInBytes * 8 converts rate from bytes to bits.
+    /**
+     * Calculates the cSHAKE256 hash of the input data into the remaining bytes of a heap or direct buffer
+     * and advances its position to its limit.
+     *
+     * @param X   The input data to be hashed.
+     * @param N   The function name for the hash.
+     * @param S   Customization string for the hash.
+     * @param out Receives the output.
+     * @throws IllegalArgumentException if X, N or S is null.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    public static void cSHAKE256(byte[] X, String N, String S, ByteBuffer out) {
+        if (X == null) {
+            throw new IllegalArgumentException("Input must not be null.");
+        }
+        SHA3.newCSHAKE256(N, S).update(X).squeeze(out);
     }
 
 
     /**
-     * Applies the Iota transformation to the input state.
+     * Starts an incremental cSHAKE256 computation.
+     * With an empty function name and customization string the sponge computes SHAKE256.
      *
-     * @param inputState The current state.
-     * @param round The current round number.
-     * @return The state after the Iota transformation.
-     * @throws IllegalArgumentException if the input state is invalid.
+     * @param N The function name for the hash.
+     * @param S Customization string for the hash.
+     * @return A sponge ready to absorb the input data.
+     * @throws IllegalArgumentException if N or S is null.
      */
-    private static long[] iota(long[] inputState, int round) {
-        if (inputState == null || inputState.length != 25 || round < 0 || round >= keccakf_rndc.length) {
-            throw new IllegalArgumentException("Invalid input to iota function");
-        }
-        inputState[0] ^= keccakf_rndc[round];
-        return inputState;
+    public static KeccakSponge initCSHAKE256(String N, String S) {
+        return SHA3.newCSHAKE256(N, S);
     }
 
+
     /**
-     * Applies the Chi transformation to the input state.
+     * Absorbs bytepad(encode_string(N) || encode_string(S), 136) into an empty sponge.
      *
-     * @param inputState The current state.
-     * @return The state after the Chi transformation.
-     * @throws IllegalArgumentException if the input state is invalid.
+     * @param sponge The empty sponge.
+     * @param N      The function name.
+     * @param S      The customization string.
      */
-    private static long[] chi(long[] inputState) {
-        if (inputState == null || inputState.length != 25) {
-            throw new IllegalArgumentException("Invalid input to chi function");
-        }
-        long[] stateOut = new long[25];
-        for (int i = 0; i < 5; i++) {
-            for (int j = 0; j < 5; j++) {
-                long tmp = ~inputState[(i + 1) % 5 + 5 * j] & inputState[(i + 2) % 5 + 5 * j];
-                stateOut[i + 5 * j] = inputState[i + 5 * j] ^ tmp;
-            }
-        }
-        return stateOut;
+    private static void absorbCustomization(KeccakSponge sponge, String N, String S) {
+        sponge.update(left_encode(RATE_BYTES)).update(encode_string(N)).update(encode_string(S)).padToBlock();
     }
 
+
     /**
-     * Applies the Rho and Pi transformations to the input state.
+     * Calculates the SHAKE256 hash of the input data.
+     * Uses the standard SHAKE256 padding of {@link SHA3}.
      *
-     * @param inputState The current state.
-     * @return The state after the Rho and Pi transformations.
-     * @throws IllegalArgumentException if the input state is invalid.
+     * @param X The input data to be hashed.
+     * @param L The desired length of the output hash.
+     * @return The computed SHAKE256 hash.
+     * @throws IllegalArgumentException if X is null or L is negative.
      */
-    private static long[] rhoPhi(long[] inputState) {
-        if (inputState == null || inputState.length != 25) {
-            throw new IllegalArgumentException("Invalid input to rhoPhi function");
-        }
-        long[] stateOut = new long[25];
-        stateOut[0] = inputState[0]; // Copy the first value directly
-        long t = inputState[1], temp;
-        for (int i = 0; i < 24; i++) {
-            int ind = keccakf_piln[i];
-            temp = inputState[ind];
-            stateOut[ind] = rotateLeft(t, keccakf_rotc[i]); // Rotation
-            t = temp;
-        }
-        return stateOut;
+    public static byte[] SHAKE256(byte[] X, long L) {
+        return SHA3.SHAKE256(X, L);
     }
 
 
     /**
-     * Applies the Theta transformation to the input state.
+     * Calculates the SHAKE256 hash of the input data into a caller-supplied buffer.
      *
-     * @param stateIn The current state.
-     * @return The state after the Theta transformation.
-     * @throws IllegalArgumentException if the input state is invalid.
+     * @param X   The input data to be hashed.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
      */
-    private static long[] theta(long[] stateIn) {
-        if (stateIn == null || stateIn.length != 25) {
-            throw new IllegalArgumentException("Invalid input to theta function");
-        }
-        long[] stateOut = new long[25];
-        long[] C = new long[5];
-        // XOR fold columns
-        for (int i = 0; i < 5; i++) {
-            C[i] = stateIn[i] ^ stateIn[i + 5] ^ stateIn[i + 10] ^ stateIn[i + 15] ^ stateIn[i + 20];
-        }
-        // Mix each bit with two other bits
-        for (int i = 0; i < 5; i++) {
-            long d = C[(i + 4) % 5] ^ rotateLeft(C[(i + 1) % 5], 1);
-            for (int j = 0; j < 5; j++) {
-                stateOut[i + 5 * j] = stateIn[i + 5 * j] ^ d;
-            }
+    public static void SHAKE256(byte[] X, byte[] out, int off, int len) {
+        SHA3.SHAKE256(X, out, off, len);
+    }
+
+
+    /**
+     * Calculates the SHAKE256 hash of the input data into the remaining bytes of a heap or direct buffer
+     * and advances its position to its limit.
+     *
+     * @param X   The input data to be hashed.
+     * @param out Receives the output.
+     * @throws IllegalArgumentException if X is null.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    public static void SHAKE256(byte[] X, ByteBuffer out) {
+        if (X == null) {
+            throw new IllegalArgumentException("Input must not be null.");
         }
-        return stateOut;
+        SHA3.newSHAKE256().update(X).squeeze(out);
     }
 
 
@@ -453,26 +586,6 @@ public class KMACXOF256 {
         return mergedBuffer.array();
     }
 
-    /**
-     * Implements the sponge construction, a cryptographic primitive used in the
-     * Keccak (SHA-3) family of cryptographic functions.
-     *
-     * @param inByteArr The input byte array.
-     * @param bitLen    Desired bit length of the output.
-     * @param capacity  Part of the state that is not affected directly by the input.
-     * @return The sponge result as a byte array.
-     */
-    private static byte[] sponge(byte[] inByteArr, int bitLen, int capacity) {
-        int rate = 1600 - capacity;
-        byte[] paddedInput = getPaddedInput(inByteArr, rate);
-        long[][] states = convertArrayToState(paddedInput, capacity);
-
-        long[] cumulativeState = performAbsorption(states, 1600);
-        long[] output = performSqueezing(cumulativeState, rate, bitLen);
-
-        return convertStateToArray(output, bitLen);
-    }
-
     /**
      * Converts a segment of a byte array, starting from a specified index, into a 64-bit word.
      *
@@ -576,57 +689,6 @@ public class KMACXOF256 {
         return arrOut;  // Return the final byte array, representing the desired number of bits from the state array.
     }
 
-    /**
-     * Adjusts the input byte array to the required rate by applying padding if necessary.
-     *
-     * @param input The input byte array to be padded.
-     * @param rate The desired rate (in bits) for the padding.
-     * @return Returns the input byte array if its length is a multiple of rate/8; otherwise, a padded array.
-     */
-    private static byte[] getPaddedInput(byte[] input, int rate) {
-        if (input.length % (rate / 8) != 0) {
-            return keccakPadding(rate, input);
-        } else {
-            return input;
-        }
-    }
-
-    /**
-     * Accumulates the state values through a series of keccak permutations.
-     *
-     * @param states An array of state matrices to be absorbed.
-     * @param width The width (in bits) of the keccak function.
-     * @return The cumulative state after performing the absorption phase.
-     */
-    private static long[] performAbsorption(long[][] states, int width) {
-        long[] cumulativeState = new long[25];
-        for (long[] state : states) {
-            cumulativeState = keccakPermutation(xorStates(cumulativeState, state), width, 24);
-        }
-        return cumulativeState;
-    }
-
-    /**
-     * Extracts the output values from the provided cumulative state.
-     *
-     * @param cumulativeState The state from which the output is to be squeezed.
-     * @param rate The rate (in bits) for squeezing.
-     * @param bitLen The length (in bits) of the desired output.
-     * @return The squeezed output as a long array.
-     */
-    private static long[] performSqueezing(long[] cumulativeState, int rate, int bitLen) {
-        long[] output = {};
-        int offset = 0;
-        do {
-            output = Arrays.copyOf(output, offset + rate / 64);
-            System.arraycopy(cumulativeState, 0, output, offset, rate / 64);
-            offset += rate / 64;
-            cumulativeState = keccakPermutation(cumulativeState, 1600, 24);
-        } while (output.length * 64 < bitLen);
-        return output;
-    }
-
-
     /**
      * Computes the bitwise XOR of two state arrays.
      *
@@ -724,50 +786,28 @@ public class KMACXOF256 {
 
     /**
      * Performs the Keccak permutation on the given state for a specified number of rounds.
+     * The state is permuted in place by {@link KeccakCore} and returned for convenience.
      *
      * @param state The initial state represented as a 1-dimensional array of longs.
-     * @param bitLen The bit length of the state. It must be a positive multiple of 25.
+     * @param bitLen The bit length of the state. Only the 1600-bit Keccak-f width is supported.
      * @param rounds The number of rounds the permutation should be applied.
-     * @return A new state array after applying the specified number of permutation rounds.
-     * @throws IllegalArgumentException if the state is null, not of length 25; if bitLen is not a positive multiple of 25;
-     * or if rounds is not a positive integer.
+     * @return The same state array after applying the specified number of permutation rounds.
+     * @throws IllegalArgumentException if the state is null, not of length 25; if bitLen is not 1600;
+     * or if rounds is not between 1 and 24.
      */
     public static long[] keccakPermutation(long[] state, int bitLen, int rounds) {
         // Validate input parameters.
         if (state == null || state.length != 25) {
             throw new IllegalArgumentException("State must be a 5x5 array.");
         }
-        if (bitLen <= 0 || bitLen % 25 != 0) {
-            throw new IllegalArgumentException("bitLen must be a positive multiple of 25.");
+        if (bitLen != 1600) {
+            throw new IllegalArgumentException("bitLen must be 1600.");
         }
-        if (rounds <= 0) {
-            throw new IllegalArgumentException("Rounds must be a positive integer.");
+        if (rounds <= 0 || rounds > KeccakCore.ROUNDS) {
+            throw new IllegalArgumentException("Rounds must be between 1 and 24.");
         }
 
-        // Calculate 'l' directly within the function, removing the need for a separate getFloorLog method.
-        int value = bitLen / 25;
-        int l = 0;
-        while (value > 1) {
-            value >>>= 1; // Unsigned right shift assignment.
-            l++;
-        }
-
-        int totalRounds = 12 + 2 * l; // Number of total rounds based on 'l'.
-        int startRound = totalRounds - rounds; // Calculate the start round.
-
-        long[] currentState = state; // Initialize the current state.
-
-        // Apply the specified number of permutation rounds.
-        for (int i = startRound; i < totalRounds; i++) {
-            currentState = iota(chi(rhoPhi(theta(currentState))), i); // Apply the permutation rounds.
-        }
-
-        return currentState; // Return the state after the permutations.
+        KeccakCore.permute(state, rounds);
+        return state;
     }
-
-
-
-
-
-
 }
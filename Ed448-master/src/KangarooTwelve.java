@@ -0,0 +1,427 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Implements the KangarooTwelve hash functions KT128 and KT256 (RFC 9861).
+ * The input is cut into 8192-byte chunks; every chunk after the first is hashed independently with 12-round
+ * TurboSHAKE on the common {@link ForkJoinPool}, and the chaining values are absorbed after the first chunk by
+ * a final TurboSHAKE node. Halving the rounds roughly doubles per-core throughput over SHAKE, and the tree
+ * lets large inputs use every core.
+ * Input is streamed, so files of any size can be hashed in constant memory. Instances are not thread-safe.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KangarooTwelve {
+
+    /** Chunk size of the tree in bytes. */
+    private static final int CHUNK = 8192;
+
+    /** Maximum number of chunks hashed per fork/join batch, bounding the chaining value buffer. */
+    private static final int MAX_CHUNKS_PER_BATCH = 512;
+
+    /** Number of chunks handled by one fork/join task. */
+    private static final int CHUNKS_PER_TASK = 8;
+
+    /** Size of each memory-mapped window when hashing a file; a whole number of chunks. */
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    /** Domain byte of a message that fits in a single chunk. */
+    private static final byte SINGLE_NODE_DOMAIN = 0x07;
+
+    /** Domain byte of the final node of a tree. */
+    private static final byte FINAL_NODE_DOMAIN = 0x06;
+
+    /** Domain byte of a leaf chunk. */
+    private static final byte LEAF_DOMAIN = 0x0B;
+
+    /** Separates the first chunk from the chaining values in the final node. */
+    private static final byte[] FIRST_CHUNK_MARKER = {0x03, 0, 0, 0, 0, 0, 0, 0};
+
+    /** Ends the final node. */
+    private static final byte[] FINAL_NODE_END = {(byte) 0xFF, (byte) 0xFF};
+
+    /** TurboSHAKE rate in bytes: 168 for KT128, 136 for KT256. */
+    private final int rateBytes;
+
+    /** Length of each chaining value in bytes: 32 for KT128, 64 for KT256. */
+    private final int cvBytes;
+
+    /** The first chunk, held back until it is known whether the message spans more than one chunk. */
+    private final byte[] first = new byte[CHUNK];
+
+    /** Number of bytes in {@link #first}. */
+    private int firstLength;
+
+    /** Bytes of the current leaf chunk not yet hashed. */
+    private final byte[] partial = new byte[CHUNK];
+
+    /** Number of bytes in {@link #partial}. */
+    private int partialLength;
+
+    /** Receives the chaining values of a batch of chunks. */
+    private byte[] chainingValues;
+
+    /** The final node; null while the message still fits in the first chunk. */
+    private KeccakSponge finalNode;
+
+    /** Number of leaf chunks absorbed into the final node. */
+    private long leaves;
+
+    /** Whether the output has been requested. */
+    private boolean finished;
+
+    /**
+     * Starts an empty KangarooTwelve computation.
+     *
+     * @param rateBytes The TurboSHAKE rate in bytes.
+     * @param cvBytes   The chaining value length in bytes.
+     */
+    private KangarooTwelve(int rateBytes, int cvBytes) {
+        this.rateBytes = rateBytes;
+        this.cvBytes = cvBytes;
+    }
+
+    /**
+     * Starts a KT128 computation.
+     *
+     * @return An empty instance.
+     */
+    public static KangarooTwelve newKT128() {
+        return new KangarooTwelve(SHA3.RATE_128, 32);
+    }
+
+    /**
+     * Starts a KT256 computation.
+     *
+     * @return An empty instance.
+     */
+    public static KangarooTwelve newKT256() {
+        return new KangarooTwelve(SHA3.RATE_256, 64);
+    }
+
+    /**
+     * Calculates KT128 of the input data.
+     *
+     * @param M The input data.
+     * @param C The customization string.
+     * @param L The desired output length in bits.
+     * @return The computed output.
+     * @throws IllegalArgumentException if M or C is null, or L is negative.
+     */
+    public static byte[] kt128(byte[] M, String C, long L) {
+        return hash(newKT128(), M, C, L);
+    }
+
+    /**
+     * Calculates KT256 of the input data.
+     *
+     * @param M The input data.
+     * @param C The customization string.
+     * @param L The desired output length in bits.
+     * @return The computed output.
+     * @throws IllegalArgumentException if M or C is null, or L is negative.
+     */
+    public static byte[] kt256(byte[] M, String C, long L) {
+        return hash(newKT256(), M, C, L);
+    }
+
+    /**
+     * Calculates KT128 of a file, mapping it into memory one window at a time.
+     *
+     * @param file The file to be hashed.
+     * @param C    The customization string.
+     * @param L    The desired output length in bits.
+     * @return The computed output.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if C is null or L is negative.
+     */
+    public static byte[] kt128(Path file, String C, long L) throws IOException {
+        return newKT128().update(file).doFinal(C, L);
+    }
+
+    /**
+     * Calculates KT256 of a file, mapping it into memory one window at a time.
+     *
+     * @param file The file to be hashed.
+     * @param C    The customization string.
+     * @param L    The desired output length in bits.
+     * @return The computed output.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if C is null or L is negative.
+     */
+    public static byte[] kt256(Path file, String C, long L) throws IOException {
+        return newKT256().update(file).doFinal(C, L);
+    }
+
+    /**
+     * Absorbs the whole byte array.
+     *
+     * @param M The input bytes.
+     * @return This instance.
+     * @throws IllegalStateException if the output has already been requested.
+     */
+    public KangarooTwelve update(byte[] M) {
+        return update(ByteBuffer.wrap(M));
+    }
+
+    /**
+     * Absorbs {@code len} bytes of {@code M} starting at {@code off}.
+     *
+     * @param M   The input bytes.
+     * @param off Offset of the first byte to absorb.
+     * @param len Number of bytes to absorb.
+     * @return This instance.
+     * @throws IllegalStateException if the output has already been requested.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public KangarooTwelve update(byte[] M, int off, int len) {
+        return update(ByteBuffer.wrap(M, off, len));
+    }
+
+    /**
+     * Absorbs the remaining bytes of a heap or direct buffer and advances its position to its limit.
+     * Runs of whole chunks are hashed in parallel straight from the buffer.
+     *
+     * @param M The input buffer.
+     * @return This instance.
+     * @throws IllegalStateException if the output has already been requested.
+     */
+    public KangarooTwelve update(ByteBuffer M) {
+        if (finished) {
+            throw new IllegalStateException("Cannot absorb after the output has been requested.");
+        }
+        while (M.hasRemaining()) {
+            if (finalNode == null) {
+                if (firstLength < CHUNK) {
+                    int n = Math.min(M.remaining(), CHUNK - firstLength);
+                    M.get(first, firstLength, n);
+                    firstLength += n;
+                    continue;
+                }
+                // More input follows a full first chunk, so the message is a tree
+                finalNode = new KeccakSponge(rateBytes, FINAL_NODE_DOMAIN, SHA3.TURBO_ROUNDS);
+                finalNode.update(first).update(FIRST_CHUNK_MARKER);
+            }
+
+            if (partialLength > 0 || M.remaining() < CHUNK) {
+                int n = Math.min(M.remaining(), CHUNK - partialLength);
+                M.get(partial, partialLength, n);
+                partialLength += n;
+                if (partialLength == CHUNK) {
+                    absorbLeaves(ByteBuffer.wrap(partial), 1);
+                    partialLength = 0;
+                }
+            } else {
+                int chunks = Math.min(MAX_CHUNKS_PER_BATCH, M.remaining() / CHUNK);
+                absorbLeaves(M.slice(M.position(), chunks * CHUNK), chunks);
+                M.position(M.position() + chunks * CHUNK);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Absorbs a file, mapping it into memory one window at a time.
+     *
+     * @param file The file to absorb.
+     * @return This instance.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalStateException if the output has already been requested.
+     */
+    public KangarooTwelve update(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos)));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the customization string and returns a reader over the output.
+     *
+     * @param C The customization string, encoded as UTF-8.
+     * @return The output reader.
+     * @throws IllegalArgumentException if C is null.
+     * @throws IllegalStateException if the output has already been requested.
+     */
+    public XofReader xof(String C) {
+        if (C == null) {
+            throw new IllegalArgumentException("Customization string must not be null.");
+        }
+        return xof(C.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the customization bytes and returns a reader over the output.
+     *
+     * @param C The customization bytes.
+     * @return The output reader.
+     * @throws IllegalArgumentException if C is null.
+     * @throws IllegalStateException if the output has already been requested.
+     */
+    public XofReader xof(byte[] C) {
+        if (C == null) {
+            throw new IllegalArgumentException("Customization string must not be null.");
+        }
+        update(C);
+        update(lengthEncode(C.length));
+        finished = true;
+
+        if (finalNode == null) {
+            return new KeccakSponge(rateBytes, SINGLE_NODE_DOMAIN, SHA3.TURBO_ROUNDS).update(first, 0, firstLength).xof();
+        }
+        if (partialLength > 0) {
+            absorbLeaves(ByteBuffer.wrap(partial, 0, partialLength), 1);
+            partialLength = 0;
+        }
+        return finalNode.update(lengthEncode(leaves)).update(FINAL_NODE_END).xof();
+    }
+
+    /**
+     * Appends the customization string and returns the requested number of output bits.
+     *
+     * @param C The customization string, encoded as UTF-8.
+     * @param L The desired output length in bits.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if C is null or L is negative.
+     * @throws IllegalStateException if the output has already been requested.
+     */
+    public byte[] doFinal(String C, long L) {
+        if (C == null) {
+            throw new IllegalArgumentException("Customization string must not be null.");
+        }
+        return doFinal(C.getBytes(StandardCharsets.UTF_8), L);
+    }
+
+    /**
+     * Appends the customization bytes and returns the requested number of output bits.
+     *
+     * @param C The customization bytes.
+     * @param L The desired output length in bits.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if C is null or L is negative.
+     * @throws IllegalStateException if the output has already been requested.
+     */
+    public byte[] doFinal(byte[] C, long L) {
+        byte[] out = new byte[KeccakSponge.outputBytes(L)];
+        xof(C).squeeze(out, 0, out.length);
+        return out;
+    }
+
+    /**
+     * Hashes in-memory data.
+     *
+     * @param kt The empty instance.
+     * @param M  The input data.
+     * @param C  The customization string.
+     * @param L  The output length in bits.
+     * @return The computed output.
+     */
+    private static byte[] hash(KangarooTwelve kt, byte[] M, String C, long L) {
+        if (M == null) {
+            throw new IllegalArgumentException("Input must not be null.");
+        }
+        return kt.update(M).doFinal(C, L);
+    }
+
+    /**
+     * Hashes chunks in parallel and absorbs their chaining values, in order, into the final node.
+     *
+     * @param data   The chunks; every chunk but the last is exactly {@link #CHUNK} bytes.
+     * @param chunks The number of chunks.
+     */
+    private void absorbLeaves(ByteBuffer data, int chunks) {
+        if (chainingValues == null || chainingValues.length < chunks * cvBytes) {
+            chainingValues = new byte[Math.max(chunks, CHUNKS_PER_TASK) * cvBytes];
+        }
+        LeafTask task = new LeafTask(data, rateBytes, cvBytes, chainingValues, 0, chunks);
+        if (chunks > CHUNKS_PER_TASK) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.compute();
+        }
+        finalNode.update(chainingValues, 0, chunks * cvBytes);
+        leaves += chunks;
+    }
+
+    /**
+     * Encodes a length as its big-endian bytes without leading zeros, followed by the number of those bytes.
+     *
+     * @param x The length.
+     * @return The encoding; zero encodes as a single 0x00 byte.
+     */
+    private static byte[] lengthEncode(long x) {
+        int n = (Long.SIZE - Long.numberOfLeadingZeros(x) + 7) / 8;
+        byte[] out = new byte[n + 1];
+        for (int i = 0; i < n; i++) {
+            out[i] = (byte) (x >>> (8 * (n - 1 - i)));
+        }
+        out[n] = (byte) n;
+        return out;
+    }
+
+    /**
+     * Hashes a range of chunks, splitting the range until each task covers {@link #CHUNKS_PER_TASK} chunks.
+     */
+    private static final class LeafTask extends RecursiveAction {
+
+        /** ForkJoinTask is Serializable; this task is never actually serialized. */
+        private static final long serialVersionUID = 1L;
+
+        /** The chunks being hashed; only read through absolute slices. */
+        private final ByteBuffer data;
+
+        /** TurboSHAKE rate in bytes. */
+        private final int rateBytes;
+
+        /** Chaining value length in bytes. */
+        private final int cvBytes;
+
+        /** Receives the chaining value of chunk i at offset cvBytes * i. */
+        private final byte[] out;
+
+        /** First chunk of this task. */
+        private final int from;
+
+        /** One past the last chunk of this task. */
+        private final int to;
+
+        LeafTask(ByteBuffer data, int rateBytes, int cvBytes, byte[] out, int from, int to) {
+            this.data = data;
+            this.rateBytes = rateBytes;
+            this.cvBytes = cvBytes;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNKS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LeafTask(data, rateBytes, cvBytes, out, from, mid),
+                        new LeafTask(data, rateBytes, cvBytes, out, mid, to));
+                return;
+            }
+
+            KeccakSponge leaf = new KeccakSponge(rateBytes, LEAF_DOMAIN, SHA3.TURBO_ROUNDS);
+            for (int i = from; i < to; i++) {
+                int start = i * CHUNK;
+                leaf.reset();
+                leaf.update(data.slice(start, Math.min(CHUNK, data.limit() - start)));
+                leaf.squeeze(out, i * cvBytes, cvBytes);
+            }
+        }
+    }
+}
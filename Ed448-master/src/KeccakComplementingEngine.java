@@ -0,0 +1,105 @@
+/**
+ * Unrolled Keccak-f[1600] engine using the lane complementing transform of the Keccak implementation overview.
+ * Lanes 1, 2, 8, 12, 17 and 20 are kept complemented during the permutation, which lets chi be written with
+ * OR and AND and only 8 NOT operations per round instead of 25. The state is complemented on entry and
+ * restored on exit, so callers see ordinary lanes. This pays off on CPUs and JITs without an and-not instruction.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+final class KeccakComplementingEngine implements KeccakEngine {
+
+    @Override
+    public String name() {
+        return "complementing";
+    }
+
+    @Override
+    public void permute(long[] state, int rounds) {
+        long a00 = state[0], a01 = ~state[1], a02 = ~state[2], a03 = state[3], a04 = state[4];
+        long a05 = state[5], a06 = state[6], a07 = state[7], a08 = ~state[8], a09 = state[9];
+        long a10 = state[10], a11 = state[11], a12 = ~state[12], a13 = state[13], a14 = state[14];
+        long a15 = state[15], a16 = state[16], a17 = ~state[17], a18 = state[18], a19 = state[19];
+        long a20 = ~state[20], a21 = state[21], a22 = state[22], a23 = state[23], a24 = state[24];
+
+        for (int round = KeccakCore.ROUNDS - rounds; round < KeccakCore.ROUNDS; round++) {
+            // Theta
+            long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+
+            long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            long d4 = c3 ^ Long.rotateLeft(c0, 1);
+
+            // Rho and Pi: b<i> is the lane that lands at position i
+            long b00 = a00 ^ d0;
+            long b01 = Long.rotateLeft(a06 ^ d1, 44);
+            long b02 = Long.rotateLeft(a12 ^ d2, 43);
+            long b03 = Long.rotateLeft(a18 ^ d3, 21);
+            long b04 = Long.rotateLeft(a24 ^ d4, 14);
+            long b05 = Long.rotateLeft(a03 ^ d3, 28);
+            long b06 = Long.rotateLeft(a09 ^ d4, 20);
+            long b07 = Long.rotateLeft(a10 ^ d0, 3);
+            long b08 = Long.rotateLeft(a16 ^ d1, 45);
+            long b09 = Long.rotateLeft(a22 ^ d2, 61);
+            long b10 = Long.rotateLeft(a01 ^ d1, 1);
+            long b11 = Long.rotateLeft(a07 ^ d2, 6);
+            long b12 = Long.rotateLeft(a13 ^ d3, 25);
+            long b13 = Long.rotateLeft(a19 ^ d4, 8);
+            long b14 = Long.rotateLeft(a20 ^ d0, 18);
+            long b15 = Long.rotateLeft(a04 ^ d4, 27);
+            long b16 = Long.rotateLeft(a05 ^ d0, 36);
+            long b17 = Long.rotateLeft(a11 ^ d1, 10);
+            long b18 = Long.rotateLeft(a17 ^ d2, 15);
+            long b19 = Long.rotateLeft(a23 ^ d3, 56);
+            long b20 = Long.rotateLeft(a02 ^ d2, 62);
+            long b21 = Long.rotateLeft(a08 ^ d3, 55);
+            long b22 = Long.rotateLeft(a14 ^ d4, 39);
+            long b23 = Long.rotateLeft(a15 ^ d0, 41);
+            long b24 = Long.rotateLeft(a21 ^ d1, 2);
+
+            // Chi on complemented lanes, then Iota
+            a00 = b00 ^ (b01 | b02) ^ KeccakCore.keccakf_rndc[round];
+            a01 = b01 ^ (~b02 | b03);
+            a02 = b02 ^ (b03 & b04);
+            a03 = b03 ^ (b04 | b00);
+            a04 = b04 ^ (b00 & b01);
+
+            a05 = b05 ^ (b06 | b07);
+            a06 = b06 ^ (b07 & b08);
+            a07 = b07 ^ (b08 | ~b09);
+            a08 = b08 ^ (b09 | b05);
+            a09 = b09 ^ (b05 & b06);
+
+            a10 = b10 ^ (b11 | b12);
+            a11 = b11 ^ (b12 & b13);
+            a12 = b12 ^ (~b13 & b14);
+            a13 = ~b13 ^ (b14 | b10);
+            a14 = b14 ^ (b10 & b11);
+
+            a15 = b15 ^ (b16 & b17);
+            a16 = b16 ^ (b17 | b18);
+            a17 = b17 ^ (~b18 | b19);
+            a18 = ~b18 ^ (b19 & b15);
+            a19 = b19 ^ (b15 | b16);
+
+            a20 = b20 ^ (~b21 & b22);
+            a21 = ~b21 ^ (b22 | b23);
+            a22 = b22 ^ (b23 & b24);
+            a23 = b23 ^ (b24 | b20);
+            a24 = b24 ^ (b20 & b21);
+        }
+
+        state[0] = a00; state[1] = ~a01; state[2] = ~a02; state[3] = a03; state[4] = a04;
+        state[5] = a05; state[6] = a06; state[7] = a07; state[8] = ~a08; state[9] = a09;
+        state[10] = a10; state[11] = a11; state[12] = ~a12; state[13] = a13; state[14] = a14;
+        state[15] = a15; state[16] = a16; state[17] = ~a17; state[18] = a18; state[19] = a19;
+        state[20] = ~a20; state[21] = a21; state[22] = a22; state[23] = a23; state[24] = a24;
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Keccak-f[1600] permutation shared by every sponge in this library.
+ * Every call is dispatched to one {@link KeccakEngine}, chosen when this class is first used: the engine named by
+ * the {@code keccak.engine} system property ({@code reference}, {@code unrolled}, {@code complementing} or
+ * {@code vector}) if it is set and available, otherwise the engine that was fastest in a short calibration run
+ * on this JVM and CPU. The reference engine is never picked by calibration. The choice is fixed for the life of
+ * the JVM, so the JIT can inline the engine.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KeccakCore {
+
+    /** Number of rounds of the full Keccak-f[1600] permutation. */
+    public static final int ROUNDS = 24;
+
+    /** Constants used in Keccak round calculations. */
+    static final long[] keccakf_rndc = {
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL,
+            0x8000000080008000L, 0x000000000000808BL, 0x0000000080000001L,
+            0x8000000080008081L, 0x8000000000008009L, 0x000000000000008aL,
+            0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+            0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L,
+            0x8000000000008003L, 0x8000000000008002L, 0x8000000000000080L,
+            0x000000000000800aL, 0x800000008000000aL, 0x8000000080008081L,
+            0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+
+    /** Rotation offset of each lane, indexed by x + 5y. */
+    static final int[] RHO = {
+            0, 1, 62, 28, 27, 36, 44, 6, 55, 20, 3, 10, 43,
+            25, 39, 41, 45, 15, 21, 8, 18, 2, 61, 56, 14
+    };
+
+    /** Destination of each lane under the pi step, indexed by x + 5y. */
+    static final int[] PI = {
+            0, 10, 20, 5, 15, 16, 1, 11, 21, 6, 7, 17, 2,
+            12, 22, 23, 8, 18, 3, 13, 14, 24, 9, 19, 4
+    };
+
+    /** System property that names the engine to use instead of calibrating. */
+    public static final String ENGINE_PROPERTY = "keccak.engine";
+
+    /** Total time spent calibrating. */
+    private static final long CALIBRATION_NANOS = 60_000_000L;
+
+    /** Number of states permuted together during calibration, so batch-oriented engines are measured too. */
+    private static final int CALIBRATION_STATES = 8;
+
+    /** The engine every permutation is dispatched to. */
+    private static final KeccakEngine ENGINE = selectEngine();
+
+    private KeccakCore() {
+    }
+
+    /**
+     * Applies the full 24-round Keccak-f[1600] permutation to the state in place.
+     *
+     * @param state The 25-lane state.
+     */
+    public static void permute(long[] state) {
+        permute(state, ROUNDS);
+    }
+
+    /**
+     * Applies the last {@code rounds} rounds of Keccak-f[1600] (Keccak-p[1600, rounds]) to the state in place.
+     * No argument validation is performed; callers are expected to pass a 25-lane state and 1 to 24 rounds.
+     *
+     * @param state  The 25-lane state.
+     * @param rounds The number of rounds to apply.
+     */
+    public static void permute(long[] state, int rounds) {
+        ENGINE.permute(state, rounds);
+    }
+
+    /**
+     * Applies the last {@code rounds} rounds of Keccak-f[1600] to {@code n} independent states stored lane-major:
+     * lane j of state i lives at {@code lanes[j * n + i]}. The vector engine permutes the states side by side in
+     * SIMD registers; the scalar engines gather each state into the scratch array and permute it on its own.
+     *
+     * @param lanes   The 25 * n lanes, permuted in place.
+     * @param n       The number of interleaved states.
+     * @param scratch Working space of at least 30 * n longs.
+     * @param rounds  The number of rounds to apply.
+     */
+    public static void permuteInterleaved(long[] lanes, int n, long[] scratch, int rounds) {
+        ENGINE.permuteInterleaved(lanes, n, scratch, rounds);
+    }
+
+    /**
+     * Returns the name of the engine in use, e.g. for diagnostics.
+     *
+     * @return The engine name.
+     */
+    public static String engineName() {
+        return ENGINE.name();
+    }
+
+    /**
+     * Picks the engine named by {@link #ENGINE_PROPERTY}, or calibrates when the property is unset or names an
+     * engine that is unknown or unavailable here.
+     *
+     * @return The engine to use.
+     */
+    private static KeccakEngine selectEngine() {
+        List<KeccakEngine> engines = availableEngines();
+        String requested = System.getProperty(ENGINE_PROPERTY);
+        if (requested != null) {
+            for (KeccakEngine engine : engines) {
+                if (engine.name().equalsIgnoreCase(requested.trim())) {
+                    return engine;
+                }
+            }
+            System.err.println("Keccak engine \"" + requested + "\" is not available; calibrating instead.");
+        }
+        // The reference engine is a baseline for checking the others, not a candidate
+        return calibrate(engines.subList(1, engines.size()));
+    }
+
+    /**
+     * Lists the engines that can run on this JVM, the reference engine first. The vector engine needs the
+     * {@code jdk.incubator.vector} module resolved in the boot layer (for example with
+     * {@code --add-modules jdk.incubator.vector}); otherwise {@link KeccakVector} is never loaded.
+     *
+     * @return The available engines.
+     */
+    private static List<KeccakEngine> availableEngines() {
+        List<KeccakEngine> engines = new ArrayList<>(List.of(
+                new KeccakReferenceEngine(), new KeccakUnrolledEngine(), new KeccakComplementingEngine()));
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                engines.add(new KeccakVector());
+            } catch (LinkageError e) {
+                // Fall back to the scalar engines
+            }
+        }
+        return engines;
+    }
+
+    /**
+     * Times passes of single and interleaved permutations on each engine in turn for {@link #CALIBRATION_NANOS}
+     * and returns the engine with the fastest pass. Alternating between the engines gives each the same chance to
+     * be compiled by the JIT, and taking the fastest pass rather than the average judges each at its best.
+     *
+     * @param engines The candidate engines.
+     * @return The fastest engine.
+     */
+    private static KeccakEngine calibrate(List<KeccakEngine> engines) {
+        long[] state = new long[25];
+        long[] lanes = new long[25 * CALIBRATION_STATES];
+        long[] scratch = new long[30 * CALIBRATION_STATES];
+
+        long[] fastest = new long[engines.size()];
+        Arrays.fill(fastest, Long.MAX_VALUE);
+        long deadline = System.nanoTime() + CALIBRATION_NANOS;
+        do {
+            for (int e = 0; e < engines.size(); e++) {
+                KeccakEngine engine = engines.get(e);
+                long start = System.nanoTime();
+                for (int i = 0; i < CALIBRATION_STATES; i++) {
+                    engine.permute(state, ROUNDS);
+                }
+                engine.permuteInterleaved(lanes, CALIBRATION_STATES, scratch, ROUNDS);
+                fastest[e] = Math.min(fastest[e], System.nanoTime() - start);
+            }
+        } while (System.nanoTime() < deadline);
+
+        int best = 0;
+        for (int e = 1; e < engines.size(); e++) {
+            if (fastest[e] < fastest[best]) {
+                best = e;
+            }
+        }
+        return engines.get(best);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Implementation of the Keccak-p[1600] permutation used by {@link KeccakCore}.
+ * Several engines compute the same function with different trade-offs; {@link KeccakCore} picks one when it is
+ * first used, either the engine named by the {@code keccak.engine} system property or the fastest engine in a
+ * short calibration run, and every sponge in this library then permutes through it.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+interface KeccakEngine {
+
+    /**
+     * Returns the name under which the engine can be selected with the {@code keccak.engine} system property.
+     *
+     * @return The engine name.
+     */
+    String name();
+
+    /**
+     * Applies the last {@code rounds} rounds of Keccak-f[1600] to the state in place.
+     * No argument validation is performed; callers pass a 25-lane state and 1 to 24 rounds.
+     *
+     * @param state  The 25-lane state.
+     * @param rounds The number of rounds to apply.
+     */
+    void permute(long[] state, int rounds);
+
+    /**
+     * Applies the last {@code rounds} rounds of Keccak-f[1600] to {@code n} lane-major states, where lane j of
+     * state i lives at {@code lanes[j * n + i]}. The default gathers each state into the scratch array and runs
+     * it through {@link #permute(long[], int)}.
+     *
+     * @param lanes   The 25 * n lanes, permuted in place.
+     * @param n       The number of interleaved states.
+     * @param scratch Working space of at least 30 * n longs.
+     * @param rounds  The number of rounds to apply.
+     */
+    default void permuteInterleaved(long[] lanes, int n, long[] scratch, int rounds) {
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 25; j++) {
+                scratch[j] = lanes[j * n + i];
+            }
+            permute(scratch, rounds);
+            for (int j = 0; j < 25; j++) {
+                lanes[j * n + i] = scratch[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Loop-based Keccak-f[1600] engine in the form of Markku-Juhani Saarinen's tiny_sha3
+ * (https://github.com/mjosaarinen/tiny_sha3/), the implementation this library was originally ported from.
+ * It is the smallest engine and the baseline the others are checked against.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+final class KeccakReferenceEngine implements KeccakEngine {
+
+    /** Rotation offsets along the pi cycle. */
+    private static final int[] ROTC = {
+            1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14,
+            27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
+    };
+
+    /** Lane visited at each step of the pi cycle. */
+    private static final int[] PILN = {
+            10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4,
+            15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
+    };
+
+    @Override
+    public String name() {
+        return "reference";
+    }
+
+    @Override
+    public void permute(long[] state, int rounds) {
+        long[] bc = new long[5];
+        for (int round = KeccakCore.ROUNDS - rounds; round < KeccakCore.ROUNDS; round++) {
+            // Theta
+            for (int i = 0; i < 5; i++) {
+                bc[i] = state[i] ^ state[i + 5] ^ state[i + 10] ^ state[i + 15] ^ state[i + 20];
+            }
+            for (int i = 0; i < 5; i++) {
+                long t = bc[(i + 4) % 5] ^ Long.rotateLeft(bc[(i + 1) % 5], 1);
+                for (int j = 0; j < 25; j += 5) {
+                    state[j + i] ^= t;
+                }
+            }
+
+            // Rho Pi
+            long t = state[1];
+            for (int i = 0; i < 24; i++) {
+                int j = PILN[i];
+                long next = state[j];
+                state[j] = Long.rotateLeft(t, ROTC[i]);
+                t = next;
+            }
+
+            // Chi
+            for (int j = 0; j < 25; j += 5) {
+                for (int i = 0; i < 5; i++) {
+                    bc[i] = state[j + i];
+                }
+                for (int i = 0; i < 5; i++) {
+                    state[j + i] ^= ~bc[(i + 1) % 5] & bc[(i + 2) % 5];
+                }
+            }
+
+            // Iota
+            state[0] ^= KeccakCore.keccakf_rndc[round];
+        }
+    }
+}
@@ -0,0 +1,628 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.Objects;
+
+
+/**
+ * Incremental Keccak sponge shared by every SHA-3 derived function in this library.
+ * Input is XORed straight into the 25-lane state one rate-sized block at a time, so hashing
+ * a stream uses constant memory regardless of its length.
+ * Instances are not thread-safe; give each thread its own sponge and {@link #reset()} it between uses.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class KeccakSponge implements XofReader {
+
+    /** Reads little-endian 64-bit lanes directly out of a byte array. */
+    private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Largest byte array length the JVM reliably allocates. */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /** First four bytes of a checkpoint: "KSP" and format version 1. */
+    private static final int CHECKPOINT_MAGIC = 0x4B535001;
+
+    /** Checkpoint flag set when the sponge uses legacy padding. */
+    private static final int FLAG_LEGACY_PADDING = 1;
+
+    /** Checkpoint flag set when the sponge has switched to squeezing. */
+    private static final int FLAG_SQUEEZING = 2;
+
+    /** The 25-lane Keccak state. */
+    private final long[] state = new long[25];
+
+    /** Number of bytes absorbed or squeezed per permutation. */
+    private final int rateBytes;
+
+    /** Bytes appended to the input before the domain byte (e.g. right_encode(0) for KMACXOF256). */
+    private final byte[] suffix;
+
+    /** Domain separation byte that starts the padding. */
+    private final byte domain;
+
+    /** Whether to pad like the original byte-array sponge instead of the standard pad10*1. */
+    private final boolean legacyPadding;
+
+    /** Number of Keccak-p rounds per permutation; 24 for Keccak-f[1600], 12 for TurboSHAKE. */
+    private final int rounds;
+
+    /** Byte offset within the current rate block. */
+    private int position;
+
+    /** Whether the input has been padded and the sponge has switched to squeezing. */
+    private boolean squeezing;
+
+    /** Number of bytes absorbed since construction, {@link #reset()} or the last {@link #padToBlock()}. */
+    private long absorbed;
+
+
+    /**
+     * Constructs an empty sponge with standard padding and no suffix.
+     *
+     * @param rateBytes The rate in bytes; must be a positive multiple of 8 below 200.
+     * @param domain    Domain separation byte that starts the padding (e.g. 0x06 for SHA-3, 0x1F for SHAKE).
+     * @throws IllegalArgumentException if the rate is invalid.
+     */
+    public KeccakSponge(int rateBytes, byte domain) {
+        this(rateBytes, new byte[0], domain, false, KeccakCore.ROUNDS);
+    }
+
+    /**
+     * Constructs an empty sponge with standard padding, no suffix and a reduced number of rounds.
+     *
+     * @param rateBytes The rate in bytes; must be a positive multiple of 8 below 200.
+     * @param domain    Domain separation byte that starts the padding.
+     * @param rounds    Number of Keccak-p[1600] rounds per permutation, from 1 to 24.
+     * @throws IllegalArgumentException if the rate or number of rounds is invalid.
+     */
+    public KeccakSponge(int rateBytes, byte domain, int rounds) {
+        this(rateBytes, new byte[0], domain, false, rounds);
+    }
+
+    /**
+     * Constructs an empty sponge.
+     *
+     * @param rateBytes     The rate in bytes; must be a positive multiple of 8 below 200.
+     * @param suffix        Bytes appended to the input when it is finalized.
+     * @param domain        Domain separation byte written after the suffix.
+     * @param legacyPadding Whether to pad like the original byte-array sponge, which adds no final bit when
+     *                      the domain byte completes a block.
+     * @throws IllegalArgumentException if the rate is invalid or the suffix is null.
+     */
+    public KeccakSponge(int rateBytes, byte[] suffix, byte domain, boolean legacyPadding) {
+        this(rateBytes, suffix, domain, legacyPadding, KeccakCore.ROUNDS);
+    }
+
+    /**
+     * Constructs an empty sponge.
+     *
+     * @param rateBytes     The rate in bytes; must be a positive multiple of 8 below 200.
+     * @param suffix        Bytes appended to the input when it is finalized.
+     * @param domain        Domain separation byte written after the suffix.
+     * @param legacyPadding Whether to pad like the original byte-array sponge.
+     * @param rounds        Number of Keccak-p[1600] rounds per permutation, from 1 to 24.
+     * @throws IllegalArgumentException if the rate or number of rounds is invalid or the suffix is null.
+     */
+    private KeccakSponge(int rateBytes, byte[] suffix, byte domain, boolean legacyPadding, int rounds) {
+        if (rateBytes <= 0 || rateBytes >= 200 || rateBytes % 8 != 0) {
+            throw new IllegalArgumentException("Rate must be a positive multiple of 8 bytes below 200.");
+        }
+        if (suffix == null) {
+            throw new IllegalArgumentException("Suffix must not be null.");
+        }
+        if (rounds < 1 || rounds > KeccakCore.ROUNDS) {
+            throw new IllegalArgumentException("Number of rounds must be between 1 and 24.");
+        }
+        this.rateBytes = rateBytes;
+        this.suffix = suffix.clone();
+        this.domain = domain;
+        this.legacyPadding = legacyPadding;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Clears the state so the sponge can be reused for a new computation with the same parameters.
+     */
+    public void reset() {
+        Arrays.fill(state, 0L);
+        position = 0;
+        squeezing = false;
+        absorbed = 0;
+    }
+
+    /**
+     * Creates an independent copy of this sponge, including its parameters, state and position.
+     *
+     * @return The copy.
+     */
+    public KeccakSponge copy() {
+        KeccakSponge copy = new KeccakSponge(rateBytes, suffix, domain, legacyPadding, rounds);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Overwrites this sponge with the state and position of another sponge with the same parameters.
+     * Used to restart from a snapshot without allocating.
+     *
+     * @param other The sponge to copy from.
+     * @throws IllegalArgumentException if the rate, suffix, domain byte, padding or number of rounds differ.
+     */
+    public void copyFrom(KeccakSponge other) {
+        if (other.rateBytes != rateBytes || other.domain != domain || other.legacyPadding != legacyPadding
+                || other.rounds != rounds || !Arrays.equals(other.suffix, suffix)) {
+            throw new IllegalArgumentException("Sponge parameters do not match.");
+        }
+        System.arraycopy(other.state, 0, state, 0, state.length);
+        position = other.position;
+        squeezing = other.squeezing;
+        absorbed = other.absorbed;
+    }
+
+    /**
+     * Copies the 25 lanes into a strided array, e.g. one slot of a lane-major batch.
+     * Only meaningful at a block boundary.
+     *
+     * @param dst    The destination array.
+     * @param offset Index of lane 0.
+     * @param stride Distance between consecutive lanes.
+     */
+    void copyLanesTo(long[] dst, int offset, int stride) {
+        for (int j = 0; j < state.length; j++) {
+            dst[offset + j * stride] = state[j];
+        }
+    }
+
+    /**
+     * Returns the number of bytes absorbed since the sponge was created or reset, or since the last
+     * {@link #padToBlock()}. The KMAC, cSHAKE and SHA-3 sponges of this library end their key and customization
+     * prefix with {@link #padToBlock()}, so for them this is the number of message bytes absorbed so far, which
+     * is the offset from which a restored checkpoint continues.
+     *
+     * @return The number of bytes absorbed.
+     */
+    public long absorbed() {
+        return absorbed;
+    }
+
+    /**
+     * Exports the parameters, lanes, position and absorbed byte count to a compact binary checkpoint from which
+     * {@link #restore(byte[])} rebuilds an equivalent sponge, e.g. to resume hashing a large file after an
+     * interruption or to continue it in another process. The checkpoint holds the secret-dependent state of a
+     * keyed sponge, so it must be protected like the key.
+     *
+     * @return The checkpoint; 220 bytes plus the length of the suffix.
+     */
+    public byte[] checkpoint() {
+        ByteBuffer out = ByteBuffer.allocate(220 + suffix.length).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(CHECKPOINT_MAGIC)
+                .putShort((short) rateBytes)
+                .put(domain)
+                .put((byte) ((legacyPadding ? FLAG_LEGACY_PADDING : 0) | (squeezing ? FLAG_SQUEEZING : 0)))
+                .put((byte) rounds)
+                .put((byte) suffix.length)
+                .put(suffix)
+                .putShort((short) position)
+                .putLong(absorbed);
+        for (long lane : state) {
+            out.putLong(lane);
+        }
+        return out.array();
+    }
+
+    /**
+     * Rebuilds a sponge from a checkpoint written by {@link #checkpoint()}.
+     *
+     * @param checkpoint The checkpoint.
+     * @return The restored sponge.
+     * @throws IllegalArgumentException if the checkpoint is null, truncated, of an unknown format, or describes
+     *                                  invalid parameters.
+     */
+    public static KeccakSponge restore(byte[] checkpoint) {
+        if (checkpoint == null) {
+            throw new IllegalArgumentException("Checkpoint must not be null.");
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(checkpoint).order(ByteOrder.LITTLE_ENDIAN);
+            if (in.getInt() != CHECKPOINT_MAGIC) {
+                throw new IllegalArgumentException("Not a sponge checkpoint.");
+            }
+            int rateBytes = in.getShort();
+            byte domain = in.get();
+            int flags = in.get();
+            int rounds = in.get();
+            byte[] suffix = new byte[in.get() & 0xFF];
+            in.get(suffix);
+
+            KeccakSponge sponge = new KeccakSponge(rateBytes, suffix, domain, (flags & FLAG_LEGACY_PADDING) != 0, rounds);
+            sponge.squeezing = (flags & FLAG_SQUEEZING) != 0;
+            sponge.position = in.getShort();
+            sponge.absorbed = in.getLong();
+            for (int j = 0; j < sponge.state.length; j++) {
+                sponge.state[j] = in.getLong();
+            }
+            if (in.hasRemaining() || sponge.position < 0 || sponge.position > rateBytes || sponge.absorbed < 0) {
+                throw new IllegalArgumentException("Malformed sponge checkpoint.");
+            }
+            return sponge;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated sponge checkpoint.", e);
+        }
+    }
+
+    /**
+     * Absorbs a single byte.
+     *
+     * @param b The byte to absorb.
+     * @return This sponge.
+     * @throws IllegalStateException if the sponge is already squeezing.
+     */
+    public KeccakSponge update(byte b) {
+        checkAbsorbing();
+        xorByte(b);
+        absorbed++;
+        return this;
+    }
+
+    /**
+     * Absorbs the whole byte array.
+     *
+     * @param in The input bytes.
+     * @return This sponge.
+     * @throws IllegalStateException if the sponge is already squeezing.
+     */
+    public KeccakSponge update(byte[] in) {
+        return update(in, 0, in.length);
+    }
+
+    /**
+     * Absorbs {@code len} bytes of {@code in} starting at {@code off}.
+     *
+     * @param in  The input bytes.
+     * @param off Offset of the first byte to absorb.
+     * @param len Number of bytes to absorb.
+     * @return This sponge.
+     * @throws IllegalStateException if the sponge is already squeezing.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public KeccakSponge update(byte[] in, int off, int len) {
+        checkAbsorbing();
+        Objects.checkFromIndexSize(off, len, in.length);
+        absorbed += len;
+
+        // Top up a partially filled block first
+        while (len > 0 && position != 0) {
+            xorByte(in[off++]);
+            len--;
+        }
+
+        // Whole blocks are XORed in lane by lane
+        while (len >= rateBytes) {
+            for (int i = 0; i < rateBytes >>> 3; i++) {
+                state[i] ^= (long) LANE.get(in, off + (i << 3));
+            }
+            KeccakCore.permute(state, rounds);
+            off += rateBytes;
+            len -= rateBytes;
+        }
+
+        while (len > 0) {
+            xorByte(in[off++]);
+            len--;
+        }
+        return this;
+    }
+
+    /**
+     * Absorbs the remaining bytes of a heap or direct buffer and advances its position to its limit.
+     * Heap buffers are absorbed straight from their backing array; whole lanes of a direct buffer are read with
+     * little-endian bulk loads regardless of the buffer's byte order.
+     *
+     * @param in The input buffer.
+     * @return This sponge.
+     * @throws IllegalStateException if the sponge is already squeezing.
+     */
+    public KeccakSponge update(ByteBuffer in) {
+        checkAbsorbing();
+        int off = in.position();
+        int len = in.remaining();
+        if (in.hasArray()) {
+            update(in.array(), in.arrayOffset() + off, len);
+            in.position(off + len);
+            return this;
+        }
+        boolean swap = in.order() != ByteOrder.LITTLE_ENDIAN;
+        absorbed += len;
+
+        while (len > 0 && position != 0) {
+            xorByte(in.get(off++));
+            len--;
+        }
+
+        while (len >= rateBytes) {
+            for (int i = 0; i < rateBytes >>> 3; i++) {
+                long lane = in.getLong(off + (i << 3));
+                state[i] ^= swap ? Long.reverseBytes(lane) : lane;
+            }
+            KeccakCore.permute(state, rounds);
+            off += rateBytes;
+            len -= rateBytes;
+        }
+
+        while (len > 0) {
+            xorByte(in.get(off++));
+            len--;
+        }
+        in.position(off);
+        return this;
+    }
+
+    /**
+     * Zero-fills the rest of the current block, as the bytepad encoding does for a block size equal to the rate,
+     * and restarts the count returned by {@link #absorbed()}.
+     *
+     * @return This sponge.
+     * @throws IllegalStateException if the sponge is already squeezing.
+     */
+    public KeccakSponge padToBlock() {
+        checkAbsorbing();
+        if (position != 0) {
+            KeccakCore.permute(state, rounds);
+            position = 0;
+        }
+        absorbed = 0;
+        return this;
+    }
+
+    /**
+     * Finalizes the input and returns this sponge as a reader over its output.
+     *
+     * @return The output reader.
+     */
+    public XofReader xof() {
+        if (!squeezing) {
+            finish();
+        }
+        return this;
+    }
+
+    /**
+     * Writes the next {@code len} output bytes into {@code out} starting at {@code off}.
+     * The first call finalizes the input.
+     *
+     * @param out The output buffer.
+     * @param off Offset of the first byte to write.
+     * @param len Number of bytes to write.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    @Override
+    public void squeeze(byte[] out, int off, int len) {
+        Objects.checkFromIndexSize(off, len, out.length);
+        xof();
+        while (len > 0) {
+            if (position == rateBytes) {
+                KeccakCore.permute(state, rounds);
+                position = 0;
+            }
+            if ((position & 7) == 0 && len >= 8) {
+                // Copy whole lanes while aligned
+                int lanes = Math.min(len, rateBytes - position) >>> 3;
+                for (int i = 0; i < lanes; i++) {
+                    LANE.set(out, off, state[position >>> 3]);
+                    position += 8;
+                    off += 8;
+                }
+                len -= lanes << 3;
+            } else {
+                out[off++] = (byte) (state[position >>> 3] >>> ((position & 7) << 3));
+                position++;
+                len--;
+            }
+        }
+    }
+
+    /**
+     * Fills the remaining bytes of a heap or direct buffer with output and advances its position to its limit.
+     * The first call finalizes the input.
+     *
+     * @param out The output buffer.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    @Override
+    public void squeeze(ByteBuffer out) {
+        xof();
+        int off = out.position();
+        int len = out.remaining();
+        boolean swap = out.order() != ByteOrder.LITTLE_ENDIAN;
+        while (len > 0) {
+            if (position == rateBytes) {
+                KeccakCore.permute(state, rounds);
+                position = 0;
+            }
+            if ((position & 7) == 0 && len >= 8) {
+                int lanes = Math.min(len, rateBytes - position) >>> 3;
+                for (int i = 0; i < lanes; i++) {
+                    long lane = state[position >>> 3];
+                    out.putLong(off, swap ? Long.reverseBytes(lane) : lane);
+                    position += 8;
+                    off += 8;
+                }
+                len -= lanes << 3;
+            } else {
+                out.put(off++, (byte) (state[position >>> 3] >>> ((position & 7) << 3)));
+                position++;
+                len--;
+            }
+        }
+        out.position(off);
+    }
+
+    /**
+     * XORs the next {@code len} output bytes with {@code in} and writes the result to {@code out}.
+     * The first call finalizes the input.
+     *
+     * @param in     The input buffer.
+     * @param inOff  Offset of the first input byte.
+     * @param out    The output buffer.
+     * @param outOff Offset of the first output byte.
+     * @param len    Number of bytes to process.
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    @Override
+    public void xorKeystream(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        Objects.checkFromIndexSize(outOff, len, out.length);
+        xof();
+        while (len > 0) {
+            if (position == rateBytes) {
+                KeccakCore.permute(state, rounds);
+                position = 0;
+            }
+            if ((position & 7) == 0 && len >= 8) {
+                int lanes = Math.min(len, rateBytes - position) >>> 3;
+                for (int i = 0; i < lanes; i++) {
+                    LANE.set(out, outOff, (long) LANE.get(in, inOff) ^ state[position >>> 3]);
+                    position += 8;
+                    inOff += 8;
+                    outOff += 8;
+                }
+                len -= lanes << 3;
+            } else {
+                out[outOff++] = (byte) (in[inOff++] ^ (state[position >>> 3] >>> ((position & 7) << 3)));
+                position++;
+                len--;
+            }
+        }
+    }
+
+    /**
+     * XORs the next output bytes into the remaining bytes of a heap or direct buffer in place
+     * and advances its position to its limit. The first call finalizes the input.
+     *
+     * @param buf The buffer to mask or unmask.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    @Override
+    public void xorKeystream(ByteBuffer buf) {
+        if (buf.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        int off = buf.position();
+        int len = buf.remaining();
+        if (buf.hasArray()) {
+            xorKeystream(buf.array(), buf.arrayOffset() + off, buf.array(), buf.arrayOffset() + off, len);
+            buf.position(off + len);
+            return;
+        }
+        xof();
+        boolean swap = buf.order() != ByteOrder.LITTLE_ENDIAN;
+        while (len > 0) {
+            if (position == rateBytes) {
+                KeccakCore.permute(state, rounds);
+                position = 0;
+            }
+            if ((position & 7) == 0 && len >= 8) {
+                int lanes = Math.min(len, rateBytes - position) >>> 3;
+                for (int i = 0; i < lanes; i++) {
+                    long lane = state[position >>> 3];
+                    buf.putLong(off, buf.getLong(off) ^ (swap ? Long.reverseBytes(lane) : lane));
+                    position += 8;
+                    off += 8;
+                }
+                len -= lanes << 3;
+            } else {
+                buf.put(off, (byte) (buf.get(off) ^ (state[position >>> 3] >>> ((position & 7) << 3))));
+                off++;
+                position++;
+                len--;
+            }
+        }
+        buf.position(off);
+    }
+
+    /**
+     * Finalizes the input and returns the requested number of output bits.
+     * Outputs too large for one array can be read in parts from {@link #xof()}.
+     *
+     * @param bitLen The desired output length in bits.
+     * @return The output bytes; {@code bitLen / 8} of them.
+     * @throws IllegalArgumentException if bitLen is negative or the output does not fit in an array.
+     */
+    public byte[] doFinal(long bitLen) {
+        byte[] out = new byte[outputBytes(bitLen)];
+        squeeze(out, 0, out.length);
+        return out;
+    }
+
+    /**
+     * Converts an output length in bits to the length of the array that holds it.
+     *
+     * @param bitLen The output length in bits.
+     * @return {@code bitLen / 8}.
+     * @throws IllegalArgumentException if bitLen is negative or the output does not fit in an array.
+     */
+    static int outputBytes(long bitLen) {
+        if (bitLen < 0) {
+            throw new IllegalArgumentException("Output length must not be negative.");
+        }
+        if (bitLen / 8 > MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("Output length exceeds the largest array; read it from xof() in parts.");
+        }
+        return (int) (bitLen / 8);
+    }
+
+    /**
+     * Appends the suffix and domain byte and pads the final block.
+     * Standard padding XORs the domain byte at the current position and 0x80 into the last byte of the block.
+     * Legacy padding reproduces the original byte-array sponge used by KMACXOF256: the block is zero-filled
+     * and its last byte gets 0x80, except when the domain byte itself completes a block, in which case no
+     * padding is added. Keeping that behaviour means existing keys, signatures and cryptograms still verify.
+     */
+    private void finish() {
+        update(suffix, 0, suffix.length);
+        if (legacyPadding) {
+            xorByte(domain);
+            if (position != 0) {
+                state[(rateBytes - 1) >>> 3] ^= 0x80L << (((rateBytes - 1) & 7) << 3);
+                KeccakCore.permute(state, rounds);
+            }
+        } else {
+            state[position >>> 3] ^= ((long) domain & 0xff) << ((position & 7) << 3);
+            state[(rateBytes - 1) >>> 3] ^= 0x80L << (((rateBytes - 1) & 7) << 3);
+            KeccakCore.permute(state, rounds);
+        }
+        position = 0;
+        squeezing = true;
+    }
+
+    /**
+     * XORs one byte into the state at the current position, permuting when the block is full.
+     *
+     * @param b The byte to absorb.
+     */
+    private void xorByte(byte b) {
+        state[position >>> 3] ^= ((long) b & 0xff) << ((position & 7) << 3);
+        if (++position == rateBytes) {
+            KeccakCore.permute(state, rounds);
+            position = 0;
+        }
+    }
+
+    /**
+     * Ensures input is still being accepted.
+     *
+     * @throws IllegalStateException if the sponge is already squeezing.
+     */
+    private void checkAbsorbing() {
+        if (squeezing) {
+            throw new IllegalStateException("Cannot absorb after output has been squeezed.");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Keccak-f[1600] engine built on the incubating Java Vector API.
+ * Each lane is processed as one vector whose elements belong to 2, 4 or 8 independent states, depending on the
+ * widest long vector the platform supports, so every theta, rho, pi and chi operation advances all of those states
+ * at once. States are stored lane-major, as for {@link KeccakCore#permuteInterleaved}, so a lane of consecutive
+ * states is loaded with a single vector load. A single state has no parallelism to exploit and is permuted by
+ * {@link KeccakUnrolledEngine}. This class is only loaded by {@link KeccakCore} once the
+ * {@code jdk.incubator.vector} module is known to be present.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+final class KeccakVector implements KeccakEngine {
+
+    /** The widest long vector the platform supports. */
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /** Number of states permuted side by side in each vector. */
+    static final int LANES = SPECIES.length();
+
+    /** Permutes single states. */
+    private final KeccakEngine scalar = new KeccakUnrolledEngine();
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    @Override
+    public void permute(long[] state, int rounds) {
+        scalar.permute(state, rounds);
+    }
+
+    /**
+     * Applies the last {@code rounds} rounds of Keccak-f[1600] to {@code n} lane-major states, {@link #LANES}
+     * states at a time. When n is not a multiple of {@link #LANES} each state is permuted on its own.
+     *
+     * @param lanes   The 25 * n lanes, permuted in place.
+     * @param n       The number of interleaved states.
+     * @param scratch Working space of at least 30 * n longs.
+     * @param rounds  The number of rounds to apply.
+     */
+    @Override
+    public void permuteInterleaved(long[] lanes, int n, long[] scratch, int rounds) {
+        if (n % LANES != 0) {
+            KeccakEngine.super.permuteInterleaved(lanes, n, scratch, rounds);
+            return;
+        }
+        for (int first = 0; first < n; first += LANES) {
+            permuteGroup(lanes, n, first, scratch, rounds);
+        }
+    }
+
+    /**
+     * Permutes the {@link #LANES} states starting at state {@code first}.
+     * The scratch array holds the column parities in [0, 5 * LANES) and the rho-pi output in [5 * LANES, 30 * LANES).
+     *
+     * @param lanes   The lane-major states.
+     * @param n       The number of interleaved states (the lane stride).
+     * @param first   Index of the first state of the group.
+     * @param scratch Working space.
+     * @param rounds  The number of rounds to apply.
+     */
+    private static void permuteGroup(long[] lanes, int n, int first, long[] scratch, int rounds) {
+        final int b = 5 * LANES;
+        for (int round = KeccakCore.ROUNDS - rounds; round < KeccakCore.ROUNDS; round++) {
+            // Theta: XOR fold the columns
+            for (int x = 0; x < 5; x++) {
+                lane(lanes, n, first, x)
+                        .lanewise(VectorOperators.XOR, lane(lanes, n, first, x + 5))
+                        .lanewise(VectorOperators.XOR, lane(lanes, n, first, x + 10))
+                        .lanewise(VectorOperators.XOR, lane(lanes, n, first, x + 15))
+                        .lanewise(VectorOperators.XOR, lane(lanes, n, first, x + 20))
+                        .intoArray(scratch, x * LANES);
+            }
+
+            // Theta mixing fused with Rho and Pi
+            for (int x = 0; x < 5; x++) {
+                LongVector d = LongVector.fromArray(SPECIES, scratch, ((x + 4) % 5) * LANES)
+                        .lanewise(VectorOperators.XOR, LongVector.fromArray(SPECIES, scratch, ((x + 1) % 5) * LANES)
+                                .lanewise(VectorOperators.ROL, 1));
+                for (int j = x; j < 25; j += 5) {
+                    lane(lanes, n, first, j)
+                            .lanewise(VectorOperators.XOR, d)
+                            .lanewise(VectorOperators.ROL, KeccakCore.RHO[j])
+                            .intoArray(scratch, b + KeccakCore.PI[j] * LANES);
+                }
+            }
+
+            // Chi: a ^ (~b & c) is written as a ^ (c & ~b)
+            for (int y = 0; y < 25; y += 5) {
+                for (int x = 0; x < 5; x++) {
+                    LongVector b0 = LongVector.fromArray(SPECIES, scratch, b + (y + x) * LANES);
+                    LongVector b1 = LongVector.fromArray(SPECIES, scratch, b + (y + (x + 1) % 5) * LANES);
+                    LongVector b2 = LongVector.fromArray(SPECIES, scratch, b + (y + (x + 2) % 5) * LANES);
+                    b0.lanewise(VectorOperators.XOR, b2.lanewise(VectorOperators.AND_NOT, b1))
+                            .intoArray(lanes, (y + x) * n + first);
+                }
+            }
+
+            // Iota
+            lane(lanes, n, first, 0)
+                    .lanewise(VectorOperators.XOR, KeccakCore.keccakf_rndc[round])
+                    .intoArray(lanes, first);
+        }
+    }
+
+    /**
+     * Loads lane j of the {@link #LANES} states starting at state {@code first}.
+     *
+     * @param lanes The lane-major states.
+     * @param n     The lane stride.
+     * @param first Index of the first state.
+     * @param j     The lane index, x + 5y.
+     * @return The lane of each state.
+     */
+    private static LongVector lane(long[] lanes, int n, int first, int j) {
+        return LongVector.fromArray(SPECIES, lanes, j * n + first);
+    }
+}
@@ -1,9 +1,11 @@
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.security.SecureRandom;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Scanner;
 
@@ -178,9 +180,8 @@ public class Main {
         switch (subChoice) {
             case "1", "2" -> {
                 try {
-                    SecureRandom random = new SecureRandom();
                     byte[] kBytes = new byte[56];
-                    random.nextBytes(kBytes);
+                    KMACDrbg.current().nextBytes(kBytes);
 
                     //k <- 4k(mod r)
                     BigInteger k = new BigInteger(1, kBytes);
@@ -193,27 +194,25 @@ public class Main {
                     //Z <- k*G
                     Ed448Points Z = Ed448Points.scalarMultiply(Ed448Points.getPublicGenerator(), k);
 
-                    // (ka || ke) <- KMACXOF256(W_x, "", 2*448, "PK")
-                    byte[] ka_ke = KMACXOF256.getKMACXOF256(W.getXBytes(), "".getBytes(), 2*448, "PK");
-                    byte[] ka = Arrays.copyOfRange(ka_ke, 0, ka_ke.length/2);
-                    byte[] ke = Arrays.copyOfRange(ka_ke, ka_ke.length/2, ka_ke.length);
-
-                    //c <- KMACXOF256(ke, "", |m|, "PKE") XOR m
-                    byte[] cPreXOR = KMACXOF256.getKMACXOF256(ke, "".getBytes(), messageBytes.length * 8, "PKE");
-                    byte[] c = new byte[messageBytes.length];
-                    for (int i = 0; i < messageBytes.length; i++) {
-                        c[i] = (byte) (messageBytes[i] ^ cPreXOR[i]);
-                    }
+                    //header + Z + c + t are written together, with c masked in place over the message
+                    Crypt.Profile profile = Crypt.defaultProfile();
+                    byte[] header = profile.header();
+                    byte[] pointZ = KeyManager.pointDataZip(Z);
 
-                    //t <- KMACXOF256(ka, messageAsBytes, 448, "PKA")
-                    byte[] t = KMACXOF256.getKMACXOF256(ka, messageBytes, 448, "PKA");
+                    // (ka || ke) <- KMACXOF(W_x, header, 2*448, "PK")
+                    byte[] wx = W.getXBytes();
+                    byte[] ka_ke = new byte[2 * 56];
+                    Crypt.kmac(profile, wx, 0, wx.length, header, 0, header.length, "PK").squeeze(ka_ke, 0, ka_ke.length);
 
-                    //make one byte array of Z + c + t
-                    byte[] pointZ = KeyManager.pointDataZip(Z);
-                    byte[] finalCryptogram = KMACXOF256.concatByteArr(pointZ, c, t);
+                    //c <- KMACXOF(ke, "", |m|, "PKE") XOR m and t <- KMACXOF(ka, messageAsBytes, 448, "PKA"), side by side
+                    KeccakSponge tag = Crypt.newKMAC(profile, ka_ke, 0, 56, "PKA");
+                    Crypt.maskAndTag(Crypt.newKMAC(profile, ka_ke, 56, 56, "PKE").xof(), tag,
+                            messageBytes, 0, messageBytes, 0, messageBytes.length, true);
+                    byte[] t = tag.doFinal(448);
 
                     System.out.println("Encrypted Message Saved To " + encryptedFilePath);
-                    writeByteData(encryptedFilePath, finalCryptogram);
+                    writeByteData(encryptedFilePath, ByteBuffer.wrap(header), ByteBuffer.wrap(pointZ),
+                            ByteBuffer.wrap(messageBytes), ByteBuffer.wrap(t));
                 } catch (Exception e) {
                     System.err.println("Error Encrypting Data File: " + e.getMessage());
                 }
@@ -253,27 +252,31 @@ public class Main {
                     BigInteger s = secretBigInt.multiply(BigInteger.valueOf(4)).mod(R);
 
                     byte[] cryptogram = loadFile(new File(encryptedFilePath));
-                    byte[] t = Arrays.copyOfRange(cryptogram, cryptogram.length - 56, cryptogram.length);
-                    byte[] c = Arrays.copyOfRange(cryptogram, cryptogram.length - 56 - messageBytes.length, cryptogram.length - 56);
-                    byte[] zData = Arrays.copyOfRange(cryptogram, 0, cryptogram.length - c.length - t.length);
+                    // header || Z || c || t; the header names the profile, and c and t are read in place
+                    Crypt.Profile profile = Crypt.profileOf(cryptogram);
+                    byte[] header = profile.header();
+                    int tOff = cryptogram.length - 56;
+                    int cOff = tOff - messageBytes.length;
+                    byte[] zData = Arrays.copyOfRange(cryptogram, header.length, cOff);
 
                     Ed448Points Z = unzipData(zData);
                     Ed448Points W = Ed448Points.scalarMultiply(Z, s);
 
-                    // (ka || ke) <- KMACXOF256(W_x, "", 2*448, "PK")
-                    byte[] ka_ke = KMACXOF256.getKMACXOF256(W.getXBytes(), "".getBytes(), 2*448, "PK");
-                    byte[] ka = Arrays.copyOfRange(ka_ke, 0, ka_ke.length / 2);
-                    byte[] ke = Arrays.copyOfRange(ka_ke, ka_ke.length / 2, ka_ke.length);
+                    // (ka || ke) <- KMACXOF(W_x, header, 2*448, "PK")
+                    byte[] wx = W.getXBytes();
+                    byte[] ka_ke = new byte[2 * 56];
+                    Crypt.kmac(profile, wx, 0, wx.length, header, 0, header.length, "PK").squeeze(ka_ke, 0, ka_ke.length);
 
-                    byte[] mPreXOR = KMACXOF256.getKMACXOF256(ke, "".getBytes(), c.length * 8, "PKE");
+                    // m <- KMACXOF(ke, "", |c|, "PKE") XOR c, with t' <- KMACXOF(ka, m, 448, "PKA") following behind
+                    byte[] m = new byte[messageBytes.length];
+                    KeccakSponge tag = Crypt.newKMAC(profile, ka_ke, 0, 56, "PKA");
+                    Crypt.maskAndTag(Crypt.kmac(profile, ka_ke, 56, 56, new byte[0], 0, 0, "PKE"), tag,
+                            cryptogram, cOff, m, 0, m.length, false);
 
-                    byte[] m = new byte[c.length];
-                    for (int i = 0; i < c.length; i++) {
-                        m[i] = (byte) (c[i] ^ mPreXOR[i]);
-                    }
-                    byte[] t_prime = KMACXOF256.getKMACXOF256(ka, m, 448, "PKA");
+                    byte[] t_prime = new byte[56];
+                    tag.squeeze(t_prime, 0, t_prime.length);
 
-                    if (Arrays.equals(t, t_prime)) {
+                    if (Arrays.equals(cryptogram, tOff, cryptogram.length, t_prime, 0, t_prime.length)) {
                         System.out.println("Decrypted Message Saved To: " + decryptedFilePath);
                         writeByteData(decryptedFilePath, m);
                     } else {
@@ -442,6 +445,27 @@ public class Main {
             e.printStackTrace();
         }
     }
+    /**
+     * Writes the remaining bytes of several buffers to a file at the specified path, one after another,
+     * with gathering writes rather than first copying them into one array.
+     *
+     * @param path The path where the file should be written.
+     * @param theParts The buffers to be written to the file, in order.
+     */
+    public static void writeByteData(final String path, final ByteBuffer... theParts) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long remaining = 0;
+            for (ByteBuffer part : theParts) {
+                remaining += part.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(theParts);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
     /**
      * Reads a public key from a byte array.
      *
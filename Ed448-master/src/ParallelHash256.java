@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Implements ParallelHash256 and ParallelHashXOF256 as specified in NIST SP 800-185.
+ * The input is split into blocks of B bytes, each block is hashed with SHAKE256 on the common
+ * {@link ForkJoinPool}, and the chained leaf digests are absorbed by an outer cSHAKE256 instance,
+ * so digesting large inputs scales with the number of cores.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class ParallelHash256 {
+
+    /** Length of each leaf digest in bytes (cSHAKE256 with L = 512). */
+    private static final int LEAF_BYTES = 64;
+
+    /** Maximum number of leaves hashed per batch, bounding the leaf digest buffer to 4 MiB. */
+    private static final int MAX_LEAVES_PER_BATCH = 1 << 16;
+
+    /** Target number of input bytes handled by one fork/join task. */
+    private static final int BYTES_PER_TASK = 1 << 16;
+
+    /** Maximum size of each memory-mapped window when hashing a file. */
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private ParallelHash256() {
+    }
+
+    /**
+     * Calculates ParallelHash256 of the input data.
+     *
+     * @param X The input data to be hashed.
+     * @param B The block size in bytes.
+     * @param L The desired length of the output hash in bits.
+     * @param S Customization string for the hash.
+     * @return The computed hash.
+     * @throws IllegalArgumentException if X or S is null, B is not positive or L is negative.
+     */
+    public static byte[] parallelHash256(byte[] X, int B, long L, String S) {
+        return hash(X, B, L, S, false);
+    }
+
+    /**
+     * Calculates ParallelHashXOF256 of the input data.
+     *
+     * @param X The input data to be hashed.
+     * @param B The block size in bytes.
+     * @param L The desired length of the output in bits.
+     * @param S Customization string for the hash.
+     * @return The computed output.
+     * @throws IllegalArgumentException if X or S is null, B is not positive or L is negative.
+     */
+    public static byte[] parallelHashXOF256(byte[] X, int B, long L, String S) {
+        return hash(X, B, L, S, true);
+    }
+
+    /**
+     * Calculates ParallelHash256 of a file, mapping it into memory one window of whole blocks at a time.
+     *
+     * @param file The file to be hashed.
+     * @param B    The block size in bytes.
+     * @param L    The desired length of the output hash in bits.
+     * @param S    Customization string for the hash.
+     * @return The computed hash.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if S is null, B is not positive or L is negative.
+     */
+    public static byte[] parallelHash256(Path file, int B, long L, String S) throws IOException {
+        return hash(file, B, L, S, false);
+    }
+
+    /**
+     * Calculates ParallelHashXOF256 of a file, mapping it into memory one window of whole blocks at a time.
+     *
+     * @param file The file to be hashed.
+     * @param B    The block size in bytes.
+     * @param L    The desired length of the output in bits.
+     * @param S    Customization string for the hash.
+     * @return The computed output.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if S is null, B is not positive or L is negative.
+     */
+    public static byte[] parallelHashXOF256(Path file, int B, long L, String S) throws IOException {
+        return hash(file, B, L, S, true);
+    }
+
+    /**
+     * Hashes an in-memory input.
+     *
+     * @param X   The input data.
+     * @param B   The block size in bytes.
+     * @param L   The output length in bits.
+     * @param S   The customization string.
+     * @param xof Whether to compute the XOF variant.
+     * @return The computed output.
+     */
+    private static byte[] hash(byte[] X, int B, long L, String S, boolean xof) {
+        if (X == null) {
+            throw new IllegalArgumentException("Input must not be null.");
+        }
+        KeccakSponge outer = start(B, L, S);
+        long n = absorbLeaves(outer, ByteBuffer.wrap(X), B);
+        return finish(outer, n, L, xof);
+    }
+
+    /**
+     * Hashes a file.
+     *
+     * @param file The file.
+     * @param B    The block size in bytes.
+     * @param L    The output length in bits.
+     * @param S    The customization string.
+     * @param xof  Whether to compute the XOF variant.
+     * @return The computed output.
+     * @throws IOException if the file cannot be read.
+     */
+    private static byte[] hash(Path file, int B, long L, String S, boolean xof) throws IOException {
+        KeccakSponge outer = start(B, L, S);
+        long n = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long window = Math.max(1, MAP_WINDOW / B) * B; // Whole blocks only, so no block spans two windows
+            for (long pos = 0; pos < size; pos += window) {
+                n += absorbLeaves(outer, channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(window, size - pos)), B);
+            }
+        }
+        return finish(outer, n, L, xof);
+    }
+
+    /**
+     * Validates the parameters and starts the outer cSHAKE256 instance with left_encode(B).
+     *
+     * @param B The block size in bytes.
+     * @param L The output length in bits.
+     * @param S The customization string.
+     * @return The outer sponge.
+     */
+    private static KeccakSponge start(int B, long L, String S) {
+        if (S == null) {
+            throw new IllegalArgumentException("Customization string must not be null.");
+        }
+        if (B <= 0) {
+            throw new IllegalArgumentException("Block size must be positive.");
+        }
+        if (L < 0) {
+            throw new IllegalArgumentException("Output length must not be negative.");
+        }
+        return SHA3.newCSHAKE256("ParallelHash", S).update(KMACXOF256.left_encode(B));
+    }
+
+    /**
+     * Hashes the blocks of a buffer in parallel and absorbs their digests, in order, into the outer sponge.
+     *
+     * @param outer The outer sponge.
+     * @param data  The data; its remaining bytes are consumed.
+     * @param B     The block size in bytes.
+     * @return The number of blocks hashed.
+     */
+    private static long absorbLeaves(KeccakSponge outer, ByteBuffer data, int B) {
+        long total = 0;
+        byte[] leaves = null;
+        while (data.hasRemaining()) {
+            int blocks = (int) Math.min(MAX_LEAVES_PER_BATCH, ((long) data.remaining() + B - 1) / B);
+            int batchBytes = (int) Math.min((long) blocks * B, data.remaining());
+            if (leaves == null || leaves.length < blocks * LEAF_BYTES) {
+                leaves = new byte[blocks * LEAF_BYTES];
+            }
+
+            int tasks = Math.max(1, BYTES_PER_TASK / B);
+            ForkJoinPool.commonPool().invoke(new LeafTask(data.slice(data.position(), batchBytes), B, leaves, 0, blocks, tasks));
+            outer.update(leaves, 0, blocks * LEAF_BYTES);
+
+            data.position(data.position() + batchBytes);
+            total += blocks;
+        }
+        return total;
+    }
+
+    /**
+     * Absorbs right_encode(n) || right_encode(L) and squeezes the output.
+     *
+     * @param outer The outer sponge.
+     * @param n     The number of blocks.
+     * @param L     The output length in bits.
+     * @param xof   Whether to encode L as zero for the XOF variant.
+     * @return The output bytes.
+     */
+    private static byte[] finish(KeccakSponge outer, long n, long L, boolean xof) {
+        outer.update(KMACXOF256.right_encode(n)).update(KMACXOF256.right_encode(xof ? 0 : L));
+        return outer.doFinal(L);
+    }
+
+    /**
+     * Hashes a range of blocks, splitting the range until each task covers roughly {@link #BYTES_PER_TASK} bytes.
+     */
+    private static final class LeafTask extends RecursiveAction {
+
+        /** Serialization version; tasks are never serialized, but RecursiveAction is Serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** The batch being hashed; only read through absolute slices. */
+        private final ByteBuffer data;
+
+        /** The block size in bytes. */
+        private final int blockSize;
+
+        /** Receives the 64-byte digest of block i at offset 64 * i. */
+        private final byte[] leaves;
+
+        /** First block of this task. */
+        private final int from;
+
+        /** One past the last block of this task. */
+        private final int to;
+
+        /** Number of blocks below which the task is not split further. */
+        private final int threshold;
+
+        LeafTask(ByteBuffer data, int blockSize, byte[] leaves, int from, int to, int threshold) {
+            this.data = data;
+            this.blockSize = blockSize;
+            this.leaves = leaves;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > threshold) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LeafTask(data, blockSize, leaves, from, mid, threshold),
+                        new LeafTask(data, blockSize, leaves, mid, to, threshold));
+                return;
+            }
+
+            KeccakSponge leaf = SHA3.newSHAKE256();
+            for (int i = from; i < to; i++) {
+                int start = i * blockSize;
+                leaf.reset();
+                leaf.update(data.slice(start, Math.min(blockSize, data.limit() - start)));
+                leaf.squeeze(leaves, i * LEAF_BYTES, LEAF_BYTES);
+            }
+        }
+    }
+}
@@ -0,0 +1,598 @@
+import java.util.Objects;
+
+
+/**
+ * Standard SHA-3 derived functions (FIPS 202, NIST SP 800-185, RFC 9861) built on {@link KeccakSponge}.
+ * Unlike {@link KMACXOF256}, which keeps the padding of the original implementation for compatibility
+ * with existing keys and cryptograms, these use the standard pad10*1 and interoperate with other libraries.
+ * Every function is available as a sponge factory for incremental use, as a one-shot returning a new array,
+ * and as a one-shot writing its output into a caller-supplied buffer.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class SHA3 {
+
+    /** Rate of the 128-bit security instances in bytes. */
+    static final int RATE_128 = 168;
+
+    /** Rate of the 256-bit security instances in bytes. */
+    static final int RATE_256 = 136;
+
+    /** Number of rounds of Keccak-p[1600, 12] used by TurboSHAKE. */
+    static final int TURBO_ROUNDS = 12;
+
+    /** Domain separation byte of the fixed-length SHA-3 hash functions. */
+    private static final byte SHA3_DOMAIN = 0x06;
+
+    /** Domain separation byte of SHAKE. */
+    private static final byte SHAKE_DOMAIN = 0x1F;
+
+    /** Domain separation byte of cSHAKE. */
+    private static final byte CSHAKE_DOMAIN = 0x04;
+
+    private SHA3() {
+    }
+
+    /**
+     * Starts a SHA3-224 computation.
+     *
+     * @return An empty sponge; read its 28-byte digest with {@link KeccakSponge#doFinal(long)}.
+     */
+    public static KeccakSponge newSHA3_224() {
+        return newSHA3(224);
+    }
+
+    /**
+     * Starts a SHA3-256 computation.
+     *
+     * @return An empty sponge; read its 32-byte digest with {@link KeccakSponge#doFinal(long)}.
+     */
+    public static KeccakSponge newSHA3_256() {
+        return newSHA3(256);
+    }
+
+    /**
+     * Starts a SHA3-384 computation.
+     *
+     * @return An empty sponge; read its 48-byte digest with {@link KeccakSponge#doFinal(long)}.
+     */
+    public static KeccakSponge newSHA3_384() {
+        return newSHA3(384);
+    }
+
+    /**
+     * Starts a SHA3-512 computation.
+     *
+     * @return An empty sponge; read its 64-byte digest with {@link KeccakSponge#doFinal(long)}.
+     */
+    public static KeccakSponge newSHA3_512() {
+        return newSHA3(512);
+    }
+
+    /**
+     * Starts a SHAKE128 computation.
+     *
+     * @return An empty sponge.
+     */
+    public static KeccakSponge newSHAKE128() {
+        return new KeccakSponge(RATE_128, SHAKE_DOMAIN);
+    }
+
+    /**
+     * Starts a SHAKE256 computation.
+     *
+     * @return An empty sponge.
+     */
+    public static KeccakSponge newSHAKE256() {
+        return new KeccakSponge(RATE_256, SHAKE_DOMAIN);
+    }
+
+    /**
+     * Starts a TurboSHAKE128 computation (RFC 9861), which uses 12 rounds of the permutation.
+     *
+     * @param D The domain separation byte, from 0x01 to 0x7F.
+     * @return An empty sponge.
+     * @throws IllegalArgumentException if D is out of range.
+     */
+    public static KeccakSponge newTurboSHAKE128(byte D) {
+        return newTurboSHAKE(RATE_128, D);
+    }
+
+    /**
+     * Starts a TurboSHAKE256 computation (RFC 9861), which uses 12 rounds of the permutation.
+     *
+     * @param D The domain separation byte, from 0x01 to 0x7F.
+     * @return An empty sponge.
+     * @throws IllegalArgumentException if D is out of range.
+     */
+    public static KeccakSponge newTurboSHAKE256(byte D) {
+        return newTurboSHAKE(RATE_256, D);
+    }
+
+    /**
+     * Starts a cSHAKE128 computation. With an empty function name and customization string this is SHAKE128.
+     *
+     * @param N The function name.
+     * @param S The customization string.
+     * @return A sponge that has absorbed bytepad(encode_string(N) || encode_string(S), 168).
+     * @throws IllegalArgumentException if N or S is null.
+     */
+    public static KeccakSponge newCSHAKE128(String N, String S) {
+        return newCSHAKE(RATE_128, new byte[0], N, S);
+    }
+
+    /**
+     * Starts a cSHAKE256 computation. With an empty function name and customization string this is SHAKE256.
+     *
+     * @param N The function name.
+     * @param S The customization string.
+     * @return A sponge that has absorbed bytepad(encode_string(N) || encode_string(S), 136).
+     * @throws IllegalArgumentException if N or S is null.
+     */
+    public static KeccakSponge newCSHAKE256(String N, String S) {
+        return newCSHAKE(RATE_256, new byte[0], N, S);
+    }
+
+    /**
+     * Starts a KMAC128 computation with a fixed output length.
+     *
+     * @param K The key.
+     * @param L The output length in bits; it is bound into the MAC, so read exactly L / 8 bytes.
+     * @param S The customization string.
+     * @return A sponge ready to absorb the input data.
+     * @throws IllegalArgumentException if K or S is null, or L is negative.
+     */
+    public static KeccakSponge newKMAC128(byte[] K, long L, String S) {
+        return newKMAC(RATE_128, K, outputLength(L), S);
+    }
+
+    /**
+     * Starts a KMAC256 computation with a fixed output length.
+     *
+     * @param K The key.
+     * @param L The output length in bits; it is bound into the MAC, so read exactly L / 8 bytes.
+     * @param S The customization string.
+     * @return A sponge ready to absorb the input data.
+     * @throws IllegalArgumentException if K or S is null, or L is negative.
+     */
+    public static KeccakSponge newKMAC256(byte[] K, long L, String S) {
+        return newKMAC(RATE_256, K, outputLength(L), S);
+    }
+
+    /**
+     * Starts a KMACXOF128 computation.
+     *
+     * @param K The key.
+     * @param S The customization string.
+     * @return A sponge ready to absorb the input data.
+     * @throws IllegalArgumentException if K or S is null.
+     */
+    public static KeccakSponge newKMACXOF128(byte[] K, String S) {
+        return newKMAC(RATE_128, K, 0, S);
+    }
+
+    /**
+     * Starts a standard KMACXOF256 computation. This is not the format used by {@link KMACXOF256}.
+     *
+     * @param K The key.
+     * @param S The customization string.
+     * @return A sponge ready to absorb the input data.
+     * @throws IllegalArgumentException if K or S is null.
+     */
+    public static KeccakSponge newKMACXOF256(byte[] K, String S) {
+        return newKMAC(RATE_256, K, 0, S);
+    }
+
+    /**
+     * Calculates the SHA3-224 digest of the input data.
+     *
+     * @param X The input data.
+     * @return The 28-byte digest.
+     * @throws IllegalArgumentException if X is null.
+     */
+    public static byte[] SHA3_224(byte[] X) {
+        return digest(newSHA3_224(), X, 224);
+    }
+
+    /**
+     * Calculates the SHA3-256 digest of the input data.
+     *
+     * @param X The input data.
+     * @return The 32-byte digest.
+     * @throws IllegalArgumentException if X is null.
+     */
+    public static byte[] SHA3_256(byte[] X) {
+        return digest(newSHA3_256(), X, 256);
+    }
+
+    /**
+     * Calculates the SHA3-384 digest of the input data.
+     *
+     * @param X The input data.
+     * @return The 48-byte digest.
+     * @throws IllegalArgumentException if X is null.
+     */
+    public static byte[] SHA3_384(byte[] X) {
+        return digest(newSHA3_384(), X, 384);
+    }
+
+    /**
+     * Calculates the SHA3-512 digest of the input data.
+     *
+     * @param X The input data.
+     * @return The 64-byte digest.
+     * @throws IllegalArgumentException if X is null.
+     */
+    public static byte[] SHA3_512(byte[] X) {
+        return digest(newSHA3_512(), X, 512);
+    }
+
+    /**
+     * Calculates the SHA3-224 digest of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param out Receives the 28-byte digest.
+     * @param off Offset of the first digest byte in out.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IndexOutOfBoundsException if the digest does not fit in out.
+     */
+    public static void SHA3_224(byte[] X, byte[] out, int off) {
+        digest(newSHA3_224(), X, out, off, 28);
+    }
+
+    /**
+     * Calculates the SHA3-256 digest of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param out Receives the 32-byte digest.
+     * @param off Offset of the first digest byte in out.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IndexOutOfBoundsException if the digest does not fit in out.
+     */
+    public static void SHA3_256(byte[] X, byte[] out, int off) {
+        digest(newSHA3_256(), X, out, off, 32);
+    }
+
+    /**
+     * Calculates the SHA3-384 digest of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param out Receives the 48-byte digest.
+     * @param off Offset of the first digest byte in out.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IndexOutOfBoundsException if the digest does not fit in out.
+     */
+    public static void SHA3_384(byte[] X, byte[] out, int off) {
+        digest(newSHA3_384(), X, out, off, 48);
+    }
+
+    /**
+     * Calculates the SHA3-512 digest of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param out Receives the 64-byte digest.
+     * @param off Offset of the first digest byte in out.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IndexOutOfBoundsException if the digest does not fit in out.
+     */
+    public static void SHA3_512(byte[] X, byte[] out, int off) {
+        digest(newSHA3_512(), X, out, off, 64);
+    }
+
+    /**
+     * Calculates SHAKE128 of the input data.
+     *
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if X is null or L is negative.
+     */
+    public static byte[] SHAKE128(byte[] X, long L) {
+        return digest(newSHAKE128(), X, L);
+    }
+
+    /**
+     * Calculates SHAKE256 of the input data.
+     *
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if X is null or L is negative.
+     */
+    public static byte[] SHAKE256(byte[] X, long L) {
+        return digest(newSHAKE256(), X, L);
+    }
+
+    /**
+     * Calculates SHAKE128 of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void SHAKE128(byte[] X, byte[] out, int off, int len) {
+        digest(newSHAKE128(), X, out, off, len);
+    }
+
+    /**
+     * Calculates SHAKE256 of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void SHAKE256(byte[] X, byte[] out, int off, int len) {
+        digest(newSHAKE256(), X, out, off, len);
+    }
+
+    /**
+     * Calculates cSHAKE128 of the input data.
+     *
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @param N The function name.
+     * @param S The customization string.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if X, N or S is null, or L is negative.
+     */
+    public static byte[] cSHAKE128(byte[] X, long L, String N, String S) {
+        return digest(newCSHAKE128(N, S), X, L);
+    }
+
+    /**
+     * Calculates cSHAKE256 of the input data.
+     *
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @param N The function name.
+     * @param S The customization string.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if X, N or S is null, or L is negative.
+     */
+    public static byte[] cSHAKE256(byte[] X, long L, String N, String S) {
+        return digest(newCSHAKE256(N, S), X, L);
+    }
+
+    /**
+     * Calculates cSHAKE128 of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param N   The function name.
+     * @param S   The customization string.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if X, N or S is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void cSHAKE128(byte[] X, String N, String S, byte[] out, int off, int len) {
+        digest(newCSHAKE128(N, S), X, out, off, len);
+    }
+
+    /**
+     * Calculates cSHAKE256 of the input data into a caller-supplied buffer.
+     *
+     * @param X   The input data.
+     * @param N   The function name.
+     * @param S   The customization string.
+     * @param out Receives the output.
+     * @param off Offset of the first output byte in out.
+     * @param len Number of output bytes.
+     * @throws IllegalArgumentException if X, N or S is null.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void cSHAKE256(byte[] X, String N, String S, byte[] out, int off, int len) {
+        digest(newCSHAKE256(N, S), X, out, off, len);
+    }
+
+    /**
+     * Calculates KMAC128 of the input data.
+     *
+     * @param K The key.
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @param S The customization string.
+     * @return The MAC; {@code L / 8} bytes.
+     * @throws IllegalArgumentException if K, X or S is null, or L is negative.
+     */
+    public static byte[] KMAC128(byte[] K, byte[] X, long L, String S) {
+        return digest(newKMAC128(K, L, S), X, L);
+    }
+
+    /**
+     * Calculates KMAC256 of the input data.
+     *
+     * @param K The key.
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @param S The customization string.
+     * @return The MAC; {@code L / 8} bytes.
+     * @throws IllegalArgumentException if K, X or S is null, or L is negative.
+     */
+    public static byte[] KMAC256(byte[] K, byte[] X, long L, String S) {
+        return digest(newKMAC256(K, L, S), X, L);
+    }
+
+    /**
+     * Calculates KMACXOF128 of the input data.
+     *
+     * @param K The key.
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @param S The customization string.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if K, X or S is null, or L is negative.
+     */
+    public static byte[] KMACXOF128(byte[] K, byte[] X, long L, String S) {
+        return digest(newKMACXOF128(K, S), X, L);
+    }
+
+    /**
+     * Calculates standard KMACXOF256 of the input data. This is not the format used by {@link KMACXOF256}.
+     *
+     * @param K The key.
+     * @param X The input data.
+     * @param L The desired output length in bits.
+     * @param S The customization string.
+     * @return The output bytes; {@code L / 8} of them.
+     * @throws IllegalArgumentException if K, X or S is null, or L is negative.
+     */
+    public static byte[] KMACXOF256(byte[] K, byte[] X, long L, String S) {
+        return digest(newKMACXOF256(K, S), X, L);
+    }
+
+    /**
+     * Calculates KMAC128 of the input data into a caller-supplied buffer; the output length is {@code len} bytes.
+     *
+     * @param K   The key.
+     * @param X   The input data.
+     * @param S   The customization string.
+     * @param out Receives the MAC.
+     * @param off Offset of the first MAC byte in out.
+     * @param len Length of the MAC in bytes.
+     * @throws IllegalArgumentException if K, X or S is null, or len is negative.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void KMAC128(byte[] K, byte[] X, String S, byte[] out, int off, int len) {
+        digest(newKMAC(RATE_128, K, outputLength(len) * 8L, S), X, out, off, len);
+    }
+
+    /**
+     * Calculates KMAC256 of the input data into a caller-supplied buffer; the output length is {@code len} bytes.
+     *
+     * @param K   The key.
+     * @param X   The input data.
+     * @param S   The customization string.
+     * @param out Receives the MAC.
+     * @param off Offset of the first MAC byte in out.
+     * @param len Length of the MAC in bytes.
+     * @throws IllegalArgumentException if K, X or S is null, or len is negative.
+     * @throws IndexOutOfBoundsException if the range is outside out.
+     */
+    public static void KMAC256(byte[] K, byte[] X, String S, byte[] out, int off, int len) {
+        digest(newKMAC(RATE_256, K, outputLength(len) * 8L, S), X, out, off, len);
+    }
+
+    /**
+     * Starts a SHA-3 fixed-length hash, whose capacity is twice the digest length.
+     *
+     * @param bits The digest length in bits.
+     * @return An empty sponge.
+     */
+    private static KeccakSponge newSHA3(int bits) {
+        return new KeccakSponge(200 - bits / 4, SHA3_DOMAIN);
+    }
+
+    /**
+     * Starts a TurboSHAKE computation.
+     *
+     * @param rateBytes The rate in bytes.
+     * @param D         The domain separation byte.
+     * @return An empty sponge.
+     */
+    private static KeccakSponge newTurboSHAKE(int rateBytes, byte D) {
+        if (D < 0x01) { // Bytes 0x80 to 0xFF are negative
+            throw new IllegalArgumentException("Domain separation byte must be between 0x01 and 0x7F.");
+        }
+        return new KeccakSponge(rateBytes, D, TURBO_ROUNDS);
+    }
+
+    /**
+     * Starts a cSHAKE computation, falling back to SHAKE when N and S are both empty.
+     *
+     * @param rateBytes The rate in bytes.
+     * @param suffix    Bytes appended to the input when it is finalized.
+     * @param N         The function name.
+     * @param S         The customization string.
+     * @return A sponge that has absorbed the customization block.
+     */
+    private static KeccakSponge newCSHAKE(int rateBytes, byte[] suffix, String N, String S) {
+        if (N == null || S == null) {
+            throw new IllegalArgumentException("Function name and customization string must not be null.");
+        }
+        if (N.isEmpty() && S.isEmpty()) {
+            return new KeccakSponge(rateBytes, SHAKE_DOMAIN);
+        }
+        KeccakSponge sponge = new KeccakSponge(rateBytes, suffix, CSHAKE_DOMAIN, false);
+        sponge.update(KMACXOF256.left_encode(rateBytes))
+                .update(KMACXOF256.encode_string(N))
+                .update(KMACXOF256.encode_string(S))
+                .padToBlock();
+        return sponge;
+    }
+
+    /**
+     * Starts a KMAC computation: cSHAKE with function name "KMAC", the key absorbed as
+     * bytepad(encode_string(K), rate), and right_encode(L) appended when the input is finalized.
+     *
+     * @param rateBytes The rate in bytes.
+     * @param K         The key.
+     * @param L         The output length in bits, or 0 for the XOF variants.
+     * @param S         The customization string.
+     * @return A sponge ready to absorb the input data.
+     */
+    private static KeccakSponge newKMAC(int rateBytes, byte[] K, long L, String S) {
+        if (K == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+        KeccakSponge sponge = newCSHAKE(rateBytes, KMACXOF256.right_encode(L), "KMAC", S);
+        sponge.update(KMACXOF256.left_encode(rateBytes))
+                .update(KMACXOF256.left_encode(K.length * 8L))
+                .update(K)
+                .padToBlock();
+        return sponge;
+    }
+
+    /**
+     * Validates an output length.
+     *
+     * @param L The output length.
+     * @return L.
+     */
+    private static long outputLength(long L) {
+        if (L < 0) {
+            throw new IllegalArgumentException("Output length must not be negative.");
+        }
+        return L;
+    }
+
+    /**
+     * Absorbs the input and returns {@code L / 8} output bytes.
+     *
+     * @param sponge The started sponge.
+     * @param X      The input data.
+     * @param L      The output length in bits.
+     * @return The output bytes.
+     */
+    private static byte[] digest(KeccakSponge sponge, byte[] X, long L) {
+        if (X == null) {
+            throw new IllegalArgumentException("Input must not be null.");
+        }
+        return sponge.update(X).doFinal(L);
+    }
+
+    /**
+     * Absorbs the input and writes {@code len} output bytes into a caller-supplied buffer.
+     *
+     * @param sponge The started sponge.
+     * @param X      The input data.
+     * @param out    Receives the output.
+     * @param off    Offset of the first output byte.
+     * @param len    Number of output bytes.
+     */
+    private static void digest(KeccakSponge sponge, byte[] X, byte[] out, int off, int len) {
+        if (X == null) {
+            throw new IllegalArgumentException("Input must not be null.");
+        }
+        Objects.checkFromIndexSize(off, len, out.length);
+        sponge.update(X).squeeze(out, off, len);
+    }
+}
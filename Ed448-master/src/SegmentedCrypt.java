@@ -0,0 +1,407 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Segmented password-based encryption. The data is cut into fixed-size segments, and each one is masked and tagged
+ * on its own with keys derived from key1, key2 and its index, so segments are encrypted and decrypted on all cores
+ * of the common {@link ForkJoinPool}, and a byte range can be decrypted without reading the rest of the cryptogram.
+ * <p>
+ * Format: header || rnd || c_0 || t_0 || ... || c_(n-1) || t_(n-1), where the 8-byte header is "KPS", the
+ * {@link Crypt.Profile} id and the segment size as a big-endian int, rnd is 64 random bytes, and every segment but
+ * the last holds exactly one segment of data (the last holds the remainder, and is empty only for empty data).
+ * <pre>
+ * key1 || key2 &lt;- KMACXOF(rnd || pw, header, 1024, "S")
+ * c_i &lt;- KMACXOF(key1, i || f_i, |m_i|, "SKE") XOR m_i
+ * t_i &lt;- KMACXOF(key2, i || f_i || m_i, 512, "SKA")
+ * </pre>
+ * where i is an 8-byte big-endian index and f_i is 1 for the last segment and 0 otherwise, so reordered segments
+ * fail their tags and a cryptogram cut at a segment boundary fails the tag of its new last segment.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class SegmentedCrypt {
+
+    /** Segment size used when none is given. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    /** Length of the header. */
+    private static final int HEADER_LENGTH = 8;
+
+    /** Length of rnd and of each key. */
+    private static final int KEY_LENGTH = 64;
+
+    /** Length of each segment tag. */
+    private static final int TAG_LENGTH = 64;
+
+    /** Offset of the first segment. */
+    private static final int BODY_OFFSET = HEADER_LENGTH + KEY_LENGTH;
+
+    /** Length of a segment label, i || f_i. */
+    private static final int LABEL_LENGTH = 9;
+
+    /** Largest array the JVM reliably allocates. */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /** Number of segments handled by one fork/join task. */
+    private static final int SEGMENTS_PER_TASK = 4;
+
+    private SegmentedCrypt() {
+    }
+
+    /**
+     * Encrypts data under the default profile with {@link #DEFAULT_SEGMENT_SIZE}-byte segments.
+     *
+     * @param thePassword password for encryption
+     * @param theInput    data to encrypt
+     * @return the segmented cryptogram
+     * @throws IllegalArgumentException if the cryptogram would not fit in an array
+     */
+    public static byte[] encrypt(byte[] thePassword, byte[] theInput) {
+        return encrypt(thePassword, theInput, Crypt.defaultProfile(), DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Encrypts data under the given profile and segment size, spreading the segments over all cores.
+     *
+     * @param thePassword password for encryption
+     * @param theInput    data to encrypt
+     * @param profile     KMAC variant to use
+     * @param segmentSize number of data bytes in each segment
+     * @return the segmented cryptogram
+     * @throws IllegalArgumentException if the segment size is not positive or the cryptogram would not fit in an array
+     */
+    public static byte[] encrypt(byte[] thePassword, byte[] theInput, Crypt.Profile profile, int segmentSize) {
+        if (segmentSize <= 0 || segmentSize > MAX_ARRAY_LENGTH - TAG_LENGTH) {
+            throw new IllegalArgumentException("Segment size must be positive and fit in an array with its tag.");
+        }
+        int segments = theInput.length == 0 ? 1 : (int) ((theInput.length + (long) segmentSize - 1) / segmentSize);
+        long total = BODY_OFFSET + (long) theInput.length + (long) segments * TAG_LENGTH;
+        if (total > MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("Cryptogram is too large for one array.");
+        }
+
+        byte[] out = new byte[(int) total];
+        byte[] header = header(profile, segmentSize);
+        byte[] rnd = new byte[KEY_LENGTH];
+        KMACDrbg.current().nextBytes(rnd);
+        System.arraycopy(header, 0, out, 0, HEADER_LENGTH);
+        System.arraycopy(rnd, 0, out, HEADER_LENGTH, KEY_LENGTH);
+
+        byte[] keys = Crypt.deriveKeys(profile, KMACXOF256.concatByteArr(rnd, thePassword), header);
+        run(new SegmentTask(true, profile, keys, theInput, out, segmentSize, segments, null, 0, segments));
+        return out;
+    }
+
+    /**
+     * Decrypts a whole segmented cryptogram, spreading the segments over all cores.
+     *
+     * @param thePassword password for decryption
+     * @param theEncoded  the segmented cryptogram
+     * @return a Crypt object that is valid only if every segment tag matched, holding the decrypted data
+     * @throws IllegalArgumentException if the data is not a well-formed segmented cryptogram
+     */
+    public static Crypt decrypt(byte[] thePassword, byte[] theEncoded) {
+        if (theEncoded.length < BODY_OFFSET + TAG_LENGTH) {
+            throw new IllegalArgumentException("Cryptogram is too short.");
+        }
+        Crypt.Profile profile = profileOf(theEncoded);
+        int segmentSize = segmentSizeOf(theEncoded);
+        int segments = segmentCount(theEncoded.length, segmentSize);
+        byte[] dec = new byte[(int) (theEncoded.length - BODY_OFFSET - (long) segments * TAG_LENGTH)];
+
+        byte[] concatenatedBytes = new byte[KEY_LENGTH + thePassword.length];
+        System.arraycopy(theEncoded, HEADER_LENGTH, concatenatedBytes, 0, KEY_LENGTH);
+        System.arraycopy(thePassword, 0, concatenatedBytes, KEY_LENGTH, thePassword.length);
+        byte[] keys = Crypt.deriveKeys(profile, concatenatedBytes, Arrays.copyOf(theEncoded, HEADER_LENGTH));
+
+        boolean[] valid = new boolean[segments];
+        run(new SegmentTask(false, profile, keys, theEncoded, dec, segmentSize, segments, valid, 0, segments));
+        boolean allValid = true;
+        for (boolean segmentValid : valid) {
+            allValid &= segmentValid;
+        }
+        return new Crypt(allValid, dec);
+    }
+
+    /**
+     * Decrypts a range of the data in a segmented cryptogram, reading only the header and the segments that
+     * hold the range. Whether the cryptogram was cut short is only detected when the range includes its last segment.
+     *
+     * @param thePassword password for decryption
+     * @param in          channel over the segmented cryptogram; its position is changed
+     * @param offset      offset of the first data byte to decrypt
+     * @param length      number of data bytes to decrypt
+     * @return a Crypt object that is valid only if the tag of every segment read matched, holding the range
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the data is not a well-formed segmented cryptogram or the range lies outside the data
+     */
+    public static Crypt decrypt(byte[] thePassword, SeekableByteChannel in, long offset, int length) throws IOException {
+        long size = in.size();
+        if (size < BODY_OFFSET + TAG_LENGTH) {
+            throw new IllegalArgumentException("Cryptogram is too short.");
+        }
+        byte[] prefix = new byte[BODY_OFFSET];
+        readFully(in, 0, ByteBuffer.wrap(prefix));
+        Crypt.Profile profile = profileOf(prefix);
+        int segmentSize = segmentSizeOf(prefix);
+        long segments = segmentCount(size, segmentSize);
+        long dataLength = size - BODY_OFFSET - segments * TAG_LENGTH;
+        if (offset < 0 || length < 0 || offset > dataLength - length) {
+            throw new IllegalArgumentException("Range lies outside the data.");
+        }
+
+        byte[] concatenatedBytes = new byte[KEY_LENGTH + thePassword.length];
+        System.arraycopy(prefix, HEADER_LENGTH, concatenatedBytes, 0, KEY_LENGTH);
+        System.arraycopy(thePassword, 0, concatenatedBytes, KEY_LENGTH, thePassword.length);
+        byte[] keys = Crypt.deriveKeys(profile, concatenatedBytes, Arrays.copyOf(prefix, HEADER_LENGTH));
+
+        byte[] dec = new byte[length];
+        if (length == 0) {
+            return new Crypt(true, dec);
+        }
+        boolean valid = true;
+        long first = offset / segmentSize;
+        long last = (offset + length - 1) / segmentSize;
+        byte[] segment = new byte[(int) Math.min(segmentSize, dataLength) + TAG_LENGTH];
+        for (long i = first; i <= last; i++) {
+            long start = i * segmentSize;
+            int len = (int) Math.min(segmentSize, dataLength - start);
+            readFully(in, BODY_OFFSET + i * (segmentSize + (long) TAG_LENGTH), ByteBuffer.wrap(segment, 0, len + TAG_LENGTH));
+            valid &= decryptSegment(profile, keys, i, i == segments - 1, segment, 0, segment, 0, len);
+
+            long from = Math.max(offset, start);
+            long to = Math.min(offset + length, start + len);
+            System.arraycopy(segment, (int) (from - start), dec, (int) (from - offset), (int) (to - from));
+        }
+        return new Crypt(valid, dec);
+    }
+
+    /**
+     * Builds the header of a segmented cryptogram.
+     *
+     * @param profile     KMAC variant
+     * @param segmentSize number of data bytes in each segment
+     * @return "KPS" || profile id || segment size
+     */
+    private static byte[] header(Crypt.Profile profile, int segmentSize) {
+        return ByteBuffer.allocate(HEADER_LENGTH).put((byte) 'K').put((byte) 'P').put((byte) 'S')
+                .put(profile.id()).putInt(segmentSize).array();
+    }
+
+    /**
+     * Reads the profile from the header of a segmented cryptogram.
+     *
+     * @param encoded data starting with the header
+     * @return the profile
+     * @throws IllegalArgumentException if the data has no segmented header or names an unknown profile
+     */
+    private static Crypt.Profile profileOf(byte[] encoded) {
+        if (encoded[0] != 'K' || encoded[1] != 'P' || encoded[2] != 'S') {
+            throw new IllegalArgumentException("Not a segmented cryptogram.");
+        }
+        return Crypt.Profile.ofId(encoded[3]);
+    }
+
+    /**
+     * Reads the segment size from the header of a segmented cryptogram.
+     *
+     * @param encoded data starting with the header
+     * @return the segment size
+     * @throws IllegalArgumentException if the segment size is not positive
+     */
+    private static int segmentSizeOf(byte[] encoded) {
+        int segmentSize = ByteBuffer.wrap(encoded, 4, 4).getInt();
+        if (segmentSize <= 0 || segmentSize > MAX_ARRAY_LENGTH - TAG_LENGTH) {
+            throw new IllegalArgumentException("Invalid segment size.");
+        }
+        return segmentSize;
+    }
+
+    /**
+     * Works out how many segments a cryptogram of the given size holds.
+     *
+     * @param size        cryptogram length
+     * @param segmentSize number of data bytes in each segment
+     * @return the number of segments
+     * @throws IllegalArgumentException if no data length gives a cryptogram of that size
+     */
+    private static int segmentCount(long size, int segmentSize) {
+        long stride = segmentSize + (long) TAG_LENGTH;
+        long body = size - BODY_OFFSET;
+        long segments = (body + stride - 1) / stride;
+        long lastLength = body - (segments - 1) * stride - TAG_LENGTH;
+        if (lastLength < 0 || (lastLength == 0 && segments > 1) || segments > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cryptogram is truncated or malformed.");
+        }
+        return (int) segments;
+    }
+
+    /**
+     * Builds the label i || f_i of a segment.
+     *
+     * @param index segment index
+     * @param last  whether this is the last segment
+     * @return the label
+     */
+    private static byte[] label(long index, boolean last) {
+        return ByteBuffer.allocate(LABEL_LENGTH).putLong(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    /**
+     * Masks one segment of data and writes it followed by its tag.
+     *
+     * @param profile KMAC variant
+     * @param keys    key1 || key2
+     * @param index   segment index
+     * @param last    whether this is the last segment
+     * @param in      data array
+     * @param inOff   offset of the segment's data
+     * @param out     cryptogram array
+     * @param outOff  offset of the segment in the cryptogram
+     * @param len     number of data bytes in the segment
+     */
+    private static void encryptSegment(Crypt.Profile profile, byte[] keys, long index, boolean last,
+                                       byte[] in, int inOff, byte[] out, int outOff, int len) {
+        byte[] label = label(index, last);
+        Crypt.newKMAC(profile, keys, KEY_LENGTH, KEY_LENGTH, "SKA").update(label).update(in, inOff, len)
+                .xof().squeeze(out, outOff + len, TAG_LENGTH);
+        Crypt.newKMAC(profile, keys, 0, KEY_LENGTH, "SKE").update(label).xof().xorKeystream(in, inOff, out, outOff, len);
+    }
+
+    /**
+     * Unmasks one segment of a cryptogram and checks its tag.
+     *
+     * @param profile KMAC variant
+     * @param keys    key1 || key2
+     * @param index   segment index
+     * @param last    whether this is the last segment
+     * @param in      cryptogram array
+     * @param inOff   offset of the segment in the cryptogram
+     * @param out     data array; may be in, with outOff equal to inOff
+     * @param outOff  offset of the segment's data
+     * @param len     number of data bytes in the segment
+     * @return whether the tag matched
+     */
+    private static boolean decryptSegment(Crypt.Profile profile, byte[] keys, long index, boolean last,
+                                          byte[] in, int inOff, byte[] out, int outOff, int len) {
+        byte[] label = label(index, last);
+        Crypt.newKMAC(profile, keys, 0, KEY_LENGTH, "SKE").update(label).xof().xorKeystream(in, inOff, out, outOff, len);
+        byte[] ctag = new byte[TAG_LENGTH];
+        Crypt.newKMAC(profile, keys, KEY_LENGTH, KEY_LENGTH, "SKA").update(label).update(out, outOff, len)
+                .xof().squeeze(ctag, 0, TAG_LENGTH);
+        return Arrays.equals(in, inOff + len, inOff + len + TAG_LENGTH, ctag, 0, TAG_LENGTH);
+    }
+
+    /**
+     * Runs a segment task on the common pool, or inline when it is too small to split.
+     *
+     * @param task the task
+     */
+    private static void run(SegmentTask task) {
+        if (task.to - task.from > SEGMENTS_PER_TASK) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.compute();
+        }
+    }
+
+    /**
+     * Reads bytes from an absolute position of a channel until the buffer is full.
+     *
+     * @param in       channel to read
+     * @param position position of the first byte
+     * @param buffer   buffer to fill
+     * @throws IOException if reading fails or the channel ends first
+     */
+    private static void readFully(SeekableByteChannel in, long position, ByteBuffer buffer) throws IOException {
+        in.position(position);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                throw new IOException("Unexpected end of cryptogram.");
+            }
+        }
+    }
+
+    /**
+     * Encrypts or decrypts a range of segments, splitting the range until each task covers
+     * {@link #SEGMENTS_PER_TASK} segments.
+     */
+    private static final class SegmentTask extends RecursiveAction {
+
+        /** Declared because RecursiveAction is Serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** Whether the segments are encrypted rather than decrypted. */
+        private final boolean encrypt;
+
+        /** KMAC variant. */
+        private final Crypt.Profile profile;
+
+        /** key1 || key2. */
+        private final byte[] keys;
+
+        /** Data when encrypting, the cryptogram when decrypting. */
+        private final byte[] in;
+
+        /** The cryptogram when encrypting, data when decrypting. */
+        private final byte[] out;
+
+        /** Number of data bytes in each segment. */
+        private final int segmentSize;
+
+        /** Number of segments in the cryptogram. */
+        private final int segments;
+
+        /** Receives whether the tag of segment i matched when decrypting. */
+        private final boolean[] valid;
+
+        /** First segment of this task. */
+        private final int from;
+
+        /** One past the last segment of this task. */
+        private final int to;
+
+        SegmentTask(boolean encrypt, Crypt.Profile profile, byte[] keys, byte[] in, byte[] out, int segmentSize,
+                    int segments, boolean[] valid, int from, int to) {
+            this.encrypt = encrypt;
+            this.profile = profile;
+            this.keys = keys;
+            this.in = in;
+            this.out = out;
+            this.segmentSize = segmentSize;
+            this.segments = segments;
+            this.valid = valid;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SEGMENTS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SegmentTask(encrypt, profile, keys, in, out, segmentSize, segments, valid, from, mid),
+                        new SegmentTask(encrypt, profile, keys, in, out, segmentSize, segments, valid, mid, to));
+                return;
+            }
+
+            byte[] data = encrypt ? in : out;
+            for (int i = from; i < to; i++) {
+                long start = (long) i * segmentSize;
+                int len = (int) Math.min(segmentSize, data.length - start);
+                long cOff = BODY_OFFSET + i * (segmentSize + (long) TAG_LENGTH);
+                if (encrypt) {
+                    encryptSegment(profile, keys, i, i == segments - 1, in, (int) start, out, (int) cOff, len);
+                } else {
+                    valid[i] = decryptSegment(profile, keys, i, i == segments - 1, in, (int) cOff, out, (int) start, len);
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,16 @@ public class SignatureManager {
 
     private static final BigInteger R = BigInteger.valueOf(2).pow(446).subtract(new BigInteger("13818066809895115352007386748515426880336692474882178609894547503885"));
     private static final Ed448Points PUBLIC_GENERATOR = Ed448Points.getPublicGenerator();
+
+    /** Length in bytes of each KMAC output and of z and h in a signature. */
+    private static final int SCALAR_BYTES = 56;
+
+    /** Per-thread buffer receiving the KMAC outputs for s and k. */
+    private static final ThreadLocal<byte[]> KMAC_OUTPUTS = ThreadLocal.withInitial(() -> new byte[2 * SCALAR_BYTES]);
+
+    /** Empty data string for deriving s. */
+    private static final byte[] EMPTY = new byte[0];
+
     /**
      * Creates a digital signature for a given message and private key, and writes the signature to the specified output path.
      *
@@ -25,36 +35,56 @@ public class SignatureManager {
      * @param outputPath The file path where the signature should be written.
      */
     public static void createFileSignature(byte[] m, byte[] pw, String outputPath) {
+        // signature: z || h, each 56 bytes, with h and z written straight into it
+        byte[] signature = new byte[2 * SCALAR_BYTES];
+        byte[] kmacOut = KMAC_OUTPUTS.get();
+
         // s <- KMACXOF256(pw, “”, 448, “SK”); s <- 4s (mod r)
-        byte[] secretBytes = KMACXOF256.getKMACXOF256(pw, "".getBytes(), 448, "SK");
-        BigInteger secretBigInt = new BigInteger(1, secretBytes);
+        KMACXOF256.getKMACXOF256(pw, EMPTY, "SK", kmacOut, 0, SCALAR_BYTES);
+        BigInteger secretBigInt = new BigInteger(1, kmacOut, 0, SCALAR_BYTES);
         BigInteger s = secretBigInt.multiply(BigInteger.valueOf(4)).mod(R);
 
         // k <- KMACXOF256(s, m, 448, “N”); k <- 4k (mod r)
-        byte[] kBytes = KMACXOF256.getKMACXOF256(s.toByteArray(), m, 448, "N");
-        BigInteger kBigInt = new BigInteger(1, kBytes);
+        KMACXOF256.getKMACXOF256(s.toByteArray(), m, "N", kmacOut, SCALAR_BYTES, SCALAR_BYTES);
+        BigInteger kBigInt = new BigInteger(1, kmacOut, SCALAR_BYTES, SCALAR_BYTES);
         BigInteger k = kBigInt.multiply(BigInteger.valueOf(4)).mod(R);
 
         // U <- k * G
         Ed448Points U = Ed448Points.scalarMultiply(PUBLIC_GENERATOR, k);
 
         // h <- KMACXOF256(Ux, m, 448, “T”)
-        byte[] hBytes = KMACXOF256.getKMACXOF256(U.getX().toByteArray(), m, 448, "T");
-        BigInteger h = new BigInteger(1, hBytes);
-        
+        KMACXOF256.getKMACXOF256(U.getX().toByteArray(), m, "T", signature, SCALAR_BYTES, SCALAR_BYTES);
+        BigInteger h = new BigInteger(1, signature, SCALAR_BYTES, SCALAR_BYTES);
+
         // z <- (k – hs) mod r
         BigInteger pre_z = k.subtract(h.multiply(s));
         BigInteger z = pre_z.mod(R);
+        writeUnsigned(z, signature, 0, SCALAR_BYTES);
 
-        byte[] zBytes = z.toByteArray();
-        
-        // signature: (h, z)
-        byte[] signature = KMACXOF256.concatByteArr(zBytes, hBytes);
-        
         System.out.println("Signature Saved To: " + outputPath);
         writeByteData(outputPath, signature);
     }
 
+    /**
+     * Writes a non-negative integer as a fixed-width big-endian number without allocating.
+     *
+     * @param value The integer; it must fit in {@code len} bytes.
+     * @param out The array receiving the bytes.
+     * @param off Offset of the first byte.
+     * @param len Number of bytes to write.
+     */
+    private static void writeUnsigned(BigInteger value, byte[] out, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            int b = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if (value.testBit(8 * i + bit)) {
+                    b |= 1 << bit;
+                }
+            }
+            out[off + len - 1 - i] = (byte) b;
+        }
+    }
+
     /**
      * Verifies a digital signature against a given message and public key.
      * Prints the result of the verification process.
@@ -71,12 +101,9 @@ public class SignatureManager {
             return;
         }
 
-        final int zLen = 56;
-        byte[] zBytes = Arrays.copyOfRange(sigBytes, 0, zLen);
-        byte[] hBytes = Arrays.copyOfRange(sigBytes, zLen, sigBytes.length);
-
-        BigInteger z = new BigInteger(1, zBytes);
-        BigInteger h = new BigInteger(1, hBytes);
+        // z and h are read in place from the signature
+        BigInteger z = new BigInteger(1, sigBytes, 0, SCALAR_BYTES);
+        BigInteger h = new BigInteger(1, sigBytes, SCALAR_BYTES, sigBytes.length - SCALAR_BYTES);
 
         Ed448Points Gz = Ed448Points.scalarMultiply(PUBLIC_GENERATOR, z);
         Ed448Points Vh = Ed448Points.scalarMultiply(pubKey, h);
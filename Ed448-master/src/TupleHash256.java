@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+
+/**
+ * Implements TupleHash256 and TupleHashXOF256 as specified in NIST SP 800-185.
+ * Each element of the tuple is absorbed as encode_string(X[i]) directly into a cSHAKE256 sponge, so a tuple can be
+ * hashed from separate arrays or buffers without first concatenating them, and the length prefixes make the split
+ * between elements part of the hash.
+ * Instances are not thread-safe.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public final class TupleHash256 {
+
+    /** The cSHAKE256 sponge for function name "TupleHash" and the customization string. */
+    private final KeccakSponge sponge;
+
+    /**
+     * Starts an empty tuple.
+     *
+     * @param S Customization string for the hash.
+     * @throws IllegalArgumentException if S is null.
+     */
+    public TupleHash256(String S) {
+        if (S == null) {
+            throw new IllegalArgumentException("Customization string must not be null.");
+        }
+        this.sponge = SHA3.newCSHAKE256("TupleHash", S);
+    }
+
+    /**
+     * Calculates TupleHash256 of a tuple of byte arrays.
+     *
+     * @param X The tuple elements.
+     * @param L The desired length of the output hash in bits.
+     * @param S Customization string for the hash.
+     * @return The computed hash.
+     * @throws IllegalArgumentException if X, any of its elements, or S is null, or L is negative.
+     */
+    public static byte[] tupleHash256(byte[][] X, long L, String S) {
+        return addAll(new TupleHash256(S), X).doFinal(L);
+    }
+
+    /**
+     * Calculates TupleHashXOF256 of a tuple of byte arrays.
+     *
+     * @param X The tuple elements.
+     * @param L The desired length of the output in bits.
+     * @param S Customization string for the hash.
+     * @return The computed output.
+     * @throws IllegalArgumentException if X, any of its elements, or S is null, or L is negative.
+     */
+    public static byte[] tupleHashXOF256(byte[][] X, long L, String S) {
+        return addAll(new TupleHash256(S), X).doFinalXOF(L);
+    }
+
+    /**
+     * Appends a byte array to the tuple.
+     *
+     * @param X The element.
+     * @return This instance.
+     * @throws IllegalArgumentException if X is null.
+     * @throws IllegalStateException if the output has already been read.
+     */
+    public TupleHash256 add(byte[] X) {
+        if (X == null) {
+            throw new IllegalArgumentException("Tuple element must not be null.");
+        }
+        return add(X, 0, X.length);
+    }
+
+    /**
+     * Appends {@code len} bytes of {@code X} starting at {@code off} to the tuple.
+     *
+     * @param X   The array holding the element.
+     * @param off Offset of the first byte of the element.
+     * @param len Length of the element in bytes.
+     * @return This instance.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     * @throws IllegalStateException if the output has already been read.
+     */
+    public TupleHash256 add(byte[] X, int off, int len) {
+        Objects.checkFromIndexSize(off, len, X.length);
+        sponge.update(KMACXOF256.left_encode(len * 8L)).update(X, off, len);
+        return this;
+    }
+
+    /**
+     * Appends the remaining bytes of a heap or direct buffer to the tuple and advances its position to its limit.
+     *
+     * @param X The buffer holding the element.
+     * @return This instance.
+     * @throws IllegalStateException if the output has already been read.
+     */
+    public TupleHash256 add(ByteBuffer X) {
+        sponge.update(KMACXOF256.left_encode(X.remaining() * 8L)).update(X);
+        return this;
+    }
+
+    /**
+     * Finalizes the tuple and returns its TupleHash256.
+     *
+     * @param L The desired length of the output hash in bits.
+     * @return The computed hash.
+     * @throws IllegalArgumentException if L is negative.
+     */
+    public byte[] doFinal(long L) {
+        if (L < 0) {
+            throw new IllegalArgumentException("Output length must not be negative.");
+        }
+        return sponge.update(KMACXOF256.right_encode(L)).doFinal(L);
+    }
+
+    /**
+     * Finalizes the tuple and returns its TupleHashXOF256.
+     *
+     * @param L The desired length of the output in bits.
+     * @return The computed output.
+     * @throws IllegalArgumentException if L is negative.
+     */
+    public byte[] doFinalXOF(long L) {
+        if (L < 0) {
+            throw new IllegalArgumentException("Output length must not be negative.");
+        }
+        return sponge.update(KMACXOF256.right_encode(0)).doFinal(L);
+    }
+
+    /**
+     * Finalizes the tuple and returns a reader over the TupleHashXOF256 output.
+     *
+     * @return The output reader.
+     */
+    public XofReader xof() {
+        return sponge.update(KMACXOF256.right_encode(0)).xof();
+    }
+
+    /**
+     * Appends every element of a tuple.
+     *
+     * @param hash The instance to append to.
+     * @param X    The tuple elements.
+     * @return The instance.
+     */
+    private static TupleHash256 addAll(TupleHash256 hash, byte[][] X) {
+        if (X == null) {
+            throw new IllegalArgumentException("Tuple must not be null.");
+        }
+        for (byte[] element : X) {
+            hash.add(element);
+        }
+        return hash;
+    }
+}
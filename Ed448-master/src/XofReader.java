@@ -0,0 +1,54 @@
+import java.nio.ByteBuffer;
+
+
+/**
+ * Reads output from an extendable-output function after its input has been absorbed.
+ * Output is produced on demand: the permutation only runs when the current rate block is used up,
+ * so callers can draw an arbitrarily long keystream into buffers of their choosing.
+ *
+ * @author Andy Comfort
+ * @author Caroline El Jazmi
+ * @author Brandon Morgan
+ */
+public interface XofReader {
+
+    /**
+     * Writes the next {@code len} output bytes into {@code out} starting at {@code off}.
+     *
+     * @param out The output buffer.
+     * @param off Offset of the first byte to write.
+     * @param len Number of bytes to write.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    void squeeze(byte[] out, int off, int len);
+
+    /**
+     * Fills the remaining bytes of a heap or direct buffer with output and advances its position to its limit.
+     *
+     * @param out The output buffer.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    void squeeze(ByteBuffer out);
+
+    /**
+     * XORs the next {@code len} output bytes with {@code in} and writes the result to {@code out}.
+     * The input and output ranges may be the same range of the same array.
+     *
+     * @param in     The input buffer.
+     * @param inOff  Offset of the first input byte.
+     * @param out    The output buffer.
+     * @param outOff Offset of the first output byte.
+     * @param len    Number of bytes to process.
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    void xorKeystream(byte[] in, int inOff, byte[] out, int outOff, int len);
+
+    /**
+     * XORs the next output bytes into the remaining bytes of a heap or direct buffer in place
+     * and advances its position to its limit.
+     *
+     * @param buf The buffer to mask or unmask.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     */
+    void xorKeystream(ByteBuffer buf);
+}